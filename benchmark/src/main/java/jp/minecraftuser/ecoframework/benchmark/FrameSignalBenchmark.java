@@ -0,0 +1,146 @@
+package jp.minecraftuser.ecoframework.benchmark;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 子スレッドの停止指示判定の1回あたりのオーバーヘッド比較
+ * AsyncFrameはBukkitのスケジューラ無しに生成できないため、判定部分を同じ形で再現して比較する
+ * legacy: 変更前のsynchronized(this)内でのchildend参照
+ * atomic: 変更後のvolatileのchildend参照とAtomicReferenceの状態参照
+ * *Loop: 子スレッドのループ1回分(停止判定とキューからの取り出し)
+ * *Contended: 同一インスタンスを複数スレッドから判定する場合(複数の子スレッド、親スレッドの定期処理との競合)
+ * @author ecolight
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameSignalBenchmark {
+
+    /**
+     * 非同期フレームの状態(FrameStateと同じ定義)
+     */
+    enum FrameState {
+        STARTING,
+        RUNNING,
+        DRAINING,
+        STOPPED
+    }
+
+    /**
+     * 変更前の停止指示判定
+     */
+    static final class LegacyFrame {
+        private boolean childend = false;
+
+        /**
+         * 停止指示判定
+         * @return 停止指示を受けている場合true
+         */
+        boolean isEnd() {
+            synchronized (this) {
+                return childend;
+            }
+        }
+    }
+
+    /**
+     * 変更後の停止指示判定
+     */
+    static final class AtomicFrame {
+        private final AtomicReference<FrameState> state = new AtomicReference<>(FrameState.RUNNING);
+        private volatile boolean childend = false;
+
+        /**
+         * 停止指示判定
+         * @return 停止指示を受けている場合true
+         */
+        boolean isEnd() {
+            return childend;
+        }
+
+        /**
+         * 停止判定(親スレッドの定期処理)
+         * @return 停止状態の場合true
+         */
+        boolean isStopped() {
+            return state.get() == FrameState.STOPPED;
+        }
+    }
+
+    /**
+     * 判定対象(全スレッドで共有)
+     */
+    @State(Scope.Benchmark)
+    public static class Frames {
+        final LegacyFrame legacy = new LegacyFrame();
+        final AtomicFrame atomic = new AtomicFrame();
+    }
+
+    /**
+     * 子スレッド側キュー(スレッド毎)
+     */
+    @State(Scope.Thread)
+    public static class Queue {
+        final ConcurrentLinkedQueue<Object> queue = new ConcurrentLinkedQueue<>();
+        final Object payload = new Object();
+    }
+
+    @Benchmark
+    public boolean legacyCheck(Frames f) {
+        return f.legacy.isEnd();
+    }
+
+    @Benchmark
+    public boolean atomicCheck(Frames f) {
+        return f.atomic.isEnd();
+    }
+
+    @Benchmark
+    public boolean atomicStateCheck(Frames f) {
+        return f.atomic.isStopped();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean legacyCheckContended(Frames f) {
+        return f.legacy.isEnd();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean atomicCheckContended(Frames f) {
+        return f.atomic.isEnd();
+    }
+
+    @Benchmark
+    public Object legacyLoop(Frames f, Queue q) {
+        q.queue.offer(q.payload);
+        if (f.legacy.isEnd()) {
+            return null;
+        }
+        return q.queue.poll();
+    }
+
+    @Benchmark
+    public Object atomicLoop(Frames f, Queue q) {
+        q.queue.offer(q.payload);
+        if (f.atomic.isEnd()) {
+            return null;
+        }
+        return q.queue.poll();
+    }
+}
@@ -0,0 +1,125 @@
+package jp.minecraftuser.ecoframework.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SQLiteのコミットスループット比較
+ * プレイヤーデータ保存(PlayerFileStore)と同様にUUIDをキーとしたBLOBの更新をコミットする
+ * legacy: 変更前の設定(foreign_keysのみ SQLite既定のDELETEジャーナル、synchronous=FULL)
+ * tuned: JdbcSqliteの既定の性能設定(WAL、synchronous=NORMAL、mmap、ページキャッシュ、temp_store、busy_timeout)
+ * 1回の操作はrowsPerCommit件の更新と1回のコミット(一斉ログアウト時の連続保存を想定)
+ * 一時ディレクトリに作成するため、計測値は実行環境のストレージのfsync性能に依存する
+ * @author ecolight
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SqliteCommitBenchmark {
+    // 保存するプレイヤー数
+    private static final int PLAYERS = 1000;
+    // 1件あたりのデータサイズ(バイト)
+    private static final int DATA_SIZE = 4096;
+
+    @Param({"legacy", "tuned"})
+    public String profile;
+
+    @Param({"1", "100"})
+    public int rowsPerCommit;
+
+    private File dir;
+    private Connection con;
+    private PreparedStatement upsert;
+    private String[] keys;
+    private byte[] data;
+    private int next = 0;
+
+    /**
+     * 接続設定生成
+     * @param profile_ legacy/tuned
+     * @return 接続設定
+     */
+    static Properties properties(String profile_) {
+        Properties p = new Properties();
+        p.setProperty("foreign_keys", "true");
+        if (profile_.equals("tuned")) {
+            // JdbcSqlite.registerConfig、registerProfileの既定値と同じ
+            p.setProperty("journal_mode", "WAL");
+            p.setProperty("synchronous", "NORMAL");
+            p.setProperty("temp_store", "MEMORY");
+            p.setProperty("cache_size", "-16384");
+            p.setProperty("mmap_size", "268435456");
+            p.setProperty("busy_timeout", "5000");
+        }
+        return p;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, SQLException {
+        dir = Files.createTempDirectory("ecoframework-bench").toFile();
+        con = DriverManager.getConnection("jdbc:sqlite:" + new File(dir, "bench.db").getPath(), properties(profile));
+        try (Statement stmt = con.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE playerdata(uuid TEXT PRIMARY KEY, data BLOB NOT NULL)");
+        }
+        con.setAutoCommit(false);
+        upsert = con.prepareStatement("INSERT OR REPLACE INTO playerdata(uuid, data) VALUES(?, ?)");
+        keys = new String[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            keys[i] = UUID.randomUUID().toString();
+        }
+        data = new byte[DATA_SIZE];
+        new Random(0).nextBytes(data);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws SQLException {
+        upsert.close();
+        con.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public int commit() throws SQLException {
+        int n = 0;
+        for (int i = 0; i < rowsPerCommit; i++) {
+            upsert.setString(1, keys[next]);
+            upsert.setBytes(2, data);
+            n += upsert.executeUpdate();
+            next = (next + 1) % PLAYERS;
+        }
+        con.commit();
+        return n;
+    }
+}
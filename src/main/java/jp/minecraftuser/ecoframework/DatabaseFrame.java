@@ -8,11 +8,16 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.List;
 import java.util.logging.Logger;
 import jp.minecraftuser.ecoframework.db.CTYPE;
+import jp.minecraftuser.ecoframework.db.ConnectionProfile;
 import jp.minecraftuser.ecoframework.db.JdbcBase;
 import jp.minecraftuser.ecoframework.db.JdbcMySQL;
 import jp.minecraftuser.ecoframework.db.JdbcSqlite;
+import jp.minecraftuser.ecoframework.db.PoolStats;
+import jp.minecraftuser.ecoframework.db.StatementCache;
 import jp.minecraftuser.ecoframework.iface.Manageable;
 import jp.minecraftuser.ecoframework.iface.ReloadNotifiable;
 
@@ -94,6 +99,39 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
         return jdbc.connect();
     }
 
+    /**
+     * コネクションプールからのプロファイル指定のコネクション取得処理
+     * 参照のみの場合はREAD_ONLY_FAST、厳密な隔離が不要な更新はREAD_COMMITTED_WRITEを指定する
+     * @param profile_ コネクションプロファイル
+     * @return コネクションを返却する
+     * @throws SQLException 
+     */
+    public Connection connect(ConnectionProfile profile_) throws SQLException {
+        return jdbc.connect(profile_);
+    }
+
+    /**
+     * 読み取り用コネクション取得処理
+     * READ_ONLY_FAST(自動コミット)のコネクションを返却する
+     * SQLiteの場合は読み取り用コネクションプールから取得し、書き込み中でも待たずに読み取る
+     * @return コネクションを返却する
+     * @throws SQLException 
+     */
+    protected Connection connectReader() throws SQLException {
+        return connect(ConnectionProfile.READ_ONLY_FAST);
+    }
+
+    /**
+     * 書き込み用コネクション取得処理
+     * SERIALIZABLE_TXのコネクションを返却する(呼び出し元でcommitすること)
+     * SQLiteの場合は単一の書き込み用コネクションを到着順に待つ
+     * @return コネクションを返却する
+     * @throws SQLException 
+     */
+    protected Connection connectWriter() throws SQLException {
+        return connect(ConnectionProfile.SERIALIZABLE_TX);
+    }
+
     /**
      * マイグレーション呼び出し処理
      * @throws SQLException 
@@ -212,6 +250,28 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
         return dbname;
     }
 
+    /**
+     * コネクションプール統計取得
+     * @return プロファイル別コネクションプール統計
+     */
+    public List<PoolStats> getPoolStats() {
+        if (jdbc == null) {
+            return Collections.emptyList();
+        }
+        return jdbc.getPoolStats();
+    }
+
+    /**
+     * 単項操作用ステートメントキャッシュ取得
+     * @return ステートメントキャッシュ(DB未接続の場合null)
+     */
+    public StatementCache getStatementCache() {
+        if (jdbc == null) {
+            return null;
+        }
+        return jdbc.getStatementCache();
+    }
+
     /**
      * データベースインスタンス破棄処理
      * 本クラスをインスタンス化した場合破棄するタイミングで必ず呼ぶこと。finalizeには頼らない。
@@ -244,6 +304,8 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
      */
     public void executeStatement(Connection con_, String sql_) throws SQLException {
         Statement stmt;
+        // スキーマ変更に備えて保持中のステートメントを解放する
+        jdbc.getStatementCache().invalidate(con_);
         stmt = con_.createStatement();
         stmt.executeUpdate(sql_);
         stmt.close();
@@ -256,9 +318,10 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
      * @throws SQLException
      */
     public void executeStatement(String sql_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             executeStatement(con, sql_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -288,7 +351,7 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
      * @throws SQLException
      */
     public ResultSet executeQuery(String sql_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectReader();
         ResultSet rs = null;
         try {
             rs = executeQuery(con, sql_);
@@ -343,7 +406,7 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
 
     public long count(String table_, String column_) throws SQLException {
         long count = 0;
-        Connection con = connect();
+        Connection con = connectReader();
         try {
             count = count(con, table_, column_);
             con.close();
@@ -395,9 +458,10 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     }
 
     public void deleteRecordByString(String table_, String keycolumn_, String key_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             deleteRecordByString(con, table_, keycolumn_, key_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -414,9 +478,10 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     }
 
     public void deleteRecordByLong(String table_, String keycolumn_, long key_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             deleteRecordByLong(con, table_, keycolumn_, key_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -439,9 +504,10 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     }
 
     public void addLongColumn(String table_, String column_, Long default_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             addLongColumn(con, table_, column_, default_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -464,9 +530,10 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     }
 
     public void addFloatColumn(String table_, String column_, Float default_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             addFloatColumn(con, table_, column_, default_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -489,9 +556,10 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     }
 
     public void addStringColumn(String table_, String column_, String default_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             addStringColumn(con, table_, column_, default_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -514,9 +582,10 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     }
 
     public void addBlobColumn(String table_, String column_, byte[] default_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             addBlobColumn(con, table_, column_, default_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -554,9 +623,10 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     }
 
     public void createIndex(String name_, String table_, boolean unique_, String... columns_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             createIndex(con, name_, table_, unique_, columns_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -574,28 +644,85 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
 
 //===== 単項取得系メソッド ======================================================
 
+    /**
+     * 単項操作用ステートメント再利用開始
+     * 同一コネクションで単項操作を繰り返す場合に呼び出すと、2回目以降はコンパイル済みステートメントを再利用する
+     * コネクションをcloseする前に必ずendStatementReuseを呼び出すこと
+     * SQLiteでは呼び出さなくても物理コネクション単位で常に再利用する
+     * <pre>
+     * Connection con = connect();
+     * beginStatementReuse(con);
+     * try {
+     *     for (...) updateLongByString(con, ...);
+     *     con.commit();
+     * } finally {
+     *     endStatementReuse(con);
+     *     con.close();
+     * }
+     * </pre>
+     * @param con_ コネクション
+     */
+    public void beginStatementReuse(Connection con_) {
+        jdbc.getStatementCache().begin(con_);
+    }
+
+    /**
+     * 単項操作用ステートメント再利用終了
+     * @param con_ コネクション
+     */
+    public void endStatementReuse(Connection con_) {
+        jdbc.getStatementCache().release(con_);
+    }
+
+    /**
+     * 単項操作用ステートメント取得
+     * 生成済みのSQL文を使用し、再利用開始済みのコネクションではコンパイル済みステートメントを再利用する
+     * 使用後はfinishを呼び出すこと
+     * @param con_ コネクション
+     * @param op_ 操作種別
+     * @param table_ テーブル名
+     * @param keycolumn_ キーカラム名
+     * @param valcolumn_ 値カラム名
+     * @return プリペアドステートメント
+     * @throws SQLException
+     */
+    protected PreparedStatement prepare(Connection con_, StatementCache.Op op_, String table_, String keycolumn_, String valcolumn_) throws SQLException {
+        return jdbc.getStatementCache().prepare(con_, op_, table_, keycolumn_, valcolumn_);
+    }
+
+    /**
+     * 単項操作用ステートメント使用終了
+     * 再利用開始していないコネクションの場合はcloseする
+     * @param con_ コネクション
+     * @param prep_ prepareで取得したステートメント
+     * @throws SQLException
+     */
+    protected void finish(Connection con_, PreparedStatement prep_) throws SQLException {
+        jdbc.getStatementCache().finish(con_, prep_);
+    }
+
     public long getLongByString(Connection con_, String table_, String keycolumn_, String key_, String valcolumn_) throws SQLException {
         PreparedStatement prep = null;
         ResultSet rs = null;
         long result = 0;
-        prep = con_.prepareStatement("SELECT " + valcolumn_ + " FROM " + table_ + " WHERE " + keycolumn_ + " = ?");
+        prep = prepare(con_, StatementCache.Op.SELECT, table_, keycolumn_, valcolumn_);
         prep.setString(1, key_);
         rs = prep.executeQuery();
         // 結果無しならfalse復帰
         if (rs.next()) {
             result = rs.getLong(valcolumn_);
             rs.close();
-            prep.close();
+            finish(con_, prep);
         } else {
             rs.close();
-            prep.close();
+            finish(con_, prep);
             throw new SQLException("指定した値が見つかりませんでした");
         }
         return result;
     } 
 
     public long getLongByString(String table_, String keycolumn_, String key_, String valcolumn_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectReader();
         long result = 0;
         try {
             result = getLongByString(con, table_, keycolumn_, key_, valcolumn_);
@@ -611,24 +738,24 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
         PreparedStatement prep = null;
         ResultSet rs = null;
         long result = 0;
-        prep = con_.prepareStatement("SELECT " + valcolumn_ + " FROM " + table_ + " WHERE " + keycolumn_ + " = ?");
+        prep = prepare(con_, StatementCache.Op.SELECT, table_, keycolumn_, valcolumn_);
         prep.setLong(1, key_);
         rs = prep.executeQuery();
         // 結果無しならfalse復帰
         if (rs.next()) {
             result = rs.getLong(valcolumn_);
             rs.close();
-            prep.close();
+            finish(con_, prep);
         } else {
             rs.close();
-            prep.close();
+            finish(con_, prep);
             throw new SQLException("指定した値が見つかりませんでした");
         }
         return result;
     } 
 
     public long getLongByLong(String table_, String keycolumn_, long key_, String valcolumn_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectReader();
         long result = 0;
         try {
             result = getLongByLong(con, table_, keycolumn_, key_, valcolumn_);
@@ -644,24 +771,24 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
         PreparedStatement prep = null;
         ResultSet rs = null;
         float result = 0;
-        prep = con_.prepareStatement("SELECT " + valcolumn_ + " FROM " + table_ + " WHERE " + keycolumn_ + " = ?");
+        prep = prepare(con_, StatementCache.Op.SELECT, table_, keycolumn_, valcolumn_);
         prep.setString(1, key_);
         rs = prep.executeQuery();
         // 結果無しならfalse復帰
         if (rs.next()) {
             result = rs.getFloat(valcolumn_);
             rs.close();
-            prep.close();
+            finish(con_, prep);
         } else {
             rs.close();
-            prep.close();
+            finish(con_, prep);
             throw new SQLException("指定した値が見つかりませんでした");
         }
         return result;
     } 
 
     public float getFloatByString(String table_, String keycolumn_, String key_, String valcolumn_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectReader();
         float result = 0;
         try {
             result = getFloatByString(con, table_, keycolumn_, key_, valcolumn_);
@@ -677,24 +804,24 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
         PreparedStatement prep = null;
         ResultSet rs = null;
         float result = 0;
-        prep = con_.prepareStatement("SELECT " + valcolumn_ + " FROM " + table_ + " WHERE " + keycolumn_ + " = ?");
+        prep = prepare(con_, StatementCache.Op.SELECT, table_, keycolumn_, valcolumn_);
         prep.setLong(1, key_);
         rs = prep.executeQuery();
         // 結果無しならfalse復帰
         if (rs.next()) {
             result = rs.getFloat(valcolumn_);
             rs.close();
-            prep.close();
+            finish(con_, prep);
         } else {
             rs.close();
-            prep.close();
+            finish(con_, prep);
             throw new SQLException("指定した値が見つかりませんでした");
         }
         return result;
     } 
 
     public float getFloatByLong(String table_, String keycolumn_, long key_, String valcolumn_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectReader();
         float result = 0;
         try {
             result = getFloatByLong(con, table_, keycolumn_, key_, valcolumn_);
@@ -710,24 +837,24 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
         PreparedStatement prep = null;
         ResultSet rs = null;
         String result = null;
-        prep = con_.prepareStatement("SELECT " + valcolumn_ + " FROM " + table_ + " WHERE " + keycolumn_ + " = ?");
+        prep = prepare(con_, StatementCache.Op.SELECT, table_, keycolumn_, valcolumn_);
         prep.setString(1, key_);
         rs = prep.executeQuery();
         // 結果無しならfalse復帰
         if (rs.next()) {
             result = rs.getString(valcolumn_);
             rs.close();
-            prep.close();
+            finish(con_, prep);
         } else {
             rs.close();
-            prep.close();
+            finish(con_, prep);
             throw new SQLException("指定した値が見つかりませんでした");
         }
         return result;
     } 
 
     public String getStringByString(String table_, String keycolumn_, String key_, String valcolumn_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectReader();
         String result = null;
         try {
             result = getStringByString(con, table_, keycolumn_, key_, valcolumn_);
@@ -743,24 +870,24 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
         PreparedStatement prep = null;
         ResultSet rs = null;
         String result = null;
-        prep = con_.prepareStatement("SELECT " + valcolumn_ + " FROM " + table_ + " WHERE " + keycolumn_ + " = ?");
+        prep = prepare(con_, StatementCache.Op.SELECT, table_, keycolumn_, valcolumn_);
         prep.setLong(1, key_);
         rs = prep.executeQuery();
         // 結果無しならfalse復帰
         if (rs.next()) {
             result = rs.getString(valcolumn_);
             rs.close();
-            prep.close();
+            finish(con_, prep);
         } else {
             rs.close();
-            prep.close();
+            finish(con_, prep);
             throw new SQLException("指定した値が見つかりませんでした");
         }
         return result;
     } 
 
     public String getStringByLong(String table_, String keycolumn_, long key_, String valcolumn_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectReader();
         String result = null;
         try {
             result = getStringByLong(con, table_, keycolumn_, key_, valcolumn_);
@@ -777,7 +904,7 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
         ResultSet rs = null;
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         byte [] result = new byte[1024];
-        prep = con_.prepareStatement("SELECT " + valcolumn_ + " FROM " + table_ + " WHERE " + keycolumn_ + " = ?");
+        prep = prepare(con_, StatementCache.Op.SELECT, table_, keycolumn_, valcolumn_);
         prep.setString(1, key_);
         rs = prep.executeQuery();
         // 結果無しならfalse復帰
@@ -794,17 +921,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
             result = rs.getBytes(valcolumn_);
 
             rs.close();
-            prep.close();
+            finish(con_, prep);
         } else {
             rs.close();
-            prep.close();
+            finish(con_, prep);
             throw new SQLException("指定した値が見つかりませんでした");
         }
         return result;
     }
 
     public byte[] getBlobByString(String table_, String keycolumn_, String key_, String valcolumn_) throws SQLException, IOException {
-        Connection con = connect();
+        Connection con = connectReader();
         byte [] result = new byte[1024];
         try {
             result = getBlobByString(con, table_, keycolumn_, key_, valcolumn_);
@@ -821,7 +948,7 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
         ResultSet rs = null;
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         byte [] result = new byte[1024];
-        prep = con_.prepareStatement("SELECT " + valcolumn_ + " FROM " + table_ + " WHERE " + keycolumn_ + " = ?");
+        prep = prepare(con_, StatementCache.Op.SELECT, table_, keycolumn_, valcolumn_);
         prep.setLong(1, key_);
         rs = prep.executeQuery();
         // 結果無しならfalse復帰
@@ -838,17 +965,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
             result = rs.getBytes(valcolumn_);
 
             rs.close();
-            prep.close();
+            finish(con_, prep);
         } else {
             rs.close();
-            prep.close();
+            finish(con_, prep);
             throw new SQLException("指定した値が見つかりませんでした");
         }
         return result;
     } 
 
     public byte[] getBlobByLong(String table_, String keycolumn_, long key_, String valcolumn_) throws SQLException, IOException {
-        Connection con = connect();
+        Connection con = connectReader();
         byte [] result = new byte[1024];
         try {
             result = getBlobByLong(con, table_, keycolumn_, key_, valcolumn_);
@@ -864,16 +991,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     
     public void updateLongByString(Connection con_, String table_, String keycolumn_, String key_, String valcolumn_, long value_) throws SQLException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("UPDATE " + table_ + " SET " + valcolumn_ + " = ? WHERE " + keycolumn_ + " = ?");
+        prep = prepare(con_, StatementCache.Op.UPDATE, table_, keycolumn_, valcolumn_);
         prep.setLong(1, value_);
         prep.setString(2, key_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void updateLongByString(String table_, String keycolumn_, String key_, String valcolumn_, long value_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             updateLongByString(con, table_, keycolumn_, key_, valcolumn_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -882,16 +1010,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void updateLongByLong(Connection con_, String table_, String keycolumn_, long key_, String valcolumn_, long value_) throws SQLException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("UPDATE " + table_ + " SET " + valcolumn_ + " = ? WHERE " + keycolumn_ + " = ?");
+        prep = prepare(con_, StatementCache.Op.UPDATE, table_, keycolumn_, valcolumn_);
         prep.setLong(1, value_);
         prep.setLong(2, key_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void updateLongByLong(String table_, String keycolumn_, long key_, String valcolumn_, long value_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             updateLongByLong(con, table_, keycolumn_, key_, valcolumn_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -900,16 +1029,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void updateFloatByString(Connection con_, String table_, String keycolumn_, String key_, String valcolumn_, float value_) throws SQLException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("UPDATE " + table_ + " SET " + valcolumn_ + " = ? WHERE " + keycolumn_ + " = ?");
+        prep = prepare(con_, StatementCache.Op.UPDATE, table_, keycolumn_, valcolumn_);
         prep.setFloat(1, value_);
         prep.setString(2, key_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void updateFloatByString(String table_, String keycolumn_, String key_, String valcolumn_, float value_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             updateFloatByString(con, table_, keycolumn_, key_, valcolumn_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -918,16 +1048,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void updateFloatByLong(Connection con_, String table_, String keycolumn_, long key_, String valcolumn_, float value_) throws SQLException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("UPDATE " + table_ + " SET " + valcolumn_ + " = ? WHERE " + keycolumn_ + " = ?");
+        prep = prepare(con_, StatementCache.Op.UPDATE, table_, keycolumn_, valcolumn_);
         prep.setFloat(1, value_);
         prep.setLong(2, key_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void updateFloatByLong(String table_, String keycolumn_, long key_, String valcolumn_, float value_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             updateFloatByLong(con, table_, keycolumn_, key_, valcolumn_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -936,16 +1067,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void updateStringByString(Connection con_, String table_, String keycolumn_, String key_, String valcolumn_, String value_) throws SQLException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("UPDATE " + table_ + " SET " + valcolumn_ + " = ? WHERE " + keycolumn_ + " = ?");
+        prep = prepare(con_, StatementCache.Op.UPDATE, table_, keycolumn_, valcolumn_);
         prep.setString(1, value_);
         prep.setString(2, key_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void updateStringByString(String table_, String keycolumn_, String key_, String valcolumn_, String value_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             updateStringByString(con, table_, keycolumn_, key_, valcolumn_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -954,16 +1086,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void updateStringByLong(Connection con_, String table_, String keycolumn_, long key_, String valcolumn_, String value_) throws SQLException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("UPDATE " + table_ + " SET " + valcolumn_ + " = ? WHERE " + keycolumn_ + " = ?");
+        prep = prepare(con_, StatementCache.Op.UPDATE, table_, keycolumn_, valcolumn_);
         prep.setString(1, value_);
         prep.setLong(2, key_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void updateStringByLong(String table_, String keycolumn_, long key_, String valcolumn_, String value_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             updateStringByLong(con, table_, keycolumn_, key_, valcolumn_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -972,16 +1105,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void updateBlobByString(Connection con_, String table_, String keycolumn_, String key_, String valcolumn_, byte[] value_) throws SQLException, IOException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("UPDATE " + table_ + " SET " + valcolumn_ + " = ? WHERE " + keycolumn_ + " = ?");
+        prep = prepare(con_, StatementCache.Op.UPDATE, table_, keycolumn_, valcolumn_);
         prep.setBytes(1, value_);
         prep.setString(2, key_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void updateBlobByString(String table_, String keycolumn_, String key_, String valcolumn_, byte[] value_) throws SQLException, IOException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             updateBlobByString(con, table_, keycolumn_, key_, valcolumn_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -990,16 +1124,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void updateBlobByLong(Connection con_, String table_, String keycolumn_, long key_, String valcolumn_, byte[] value_) throws SQLException, IOException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("UPDATE " + table_ + " SET " + valcolumn_ + " = ? WHERE " + keycolumn_ + " = ?");
+        prep = prepare(con_, StatementCache.Op.UPDATE, table_, keycolumn_, valcolumn_);
         prep.setBytes(1, value_);
         prep.setLong(2, key_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void updateBlobByLong(String table_, String keycolumn_, long key_, String valcolumn_, byte[] value_) throws SQLException, IOException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             updateBlobByLong(con, table_, keycolumn_, key_, valcolumn_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -1011,16 +1146,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     
     public void insertLongByString(Connection con_, String table_, String key_, long value_) throws SQLException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("INSERT INTO " + table_ + " VALUES(?, ?)");
+        prep = prepare(con_, StatementCache.Op.INSERT, table_, null, null);
         prep.setString(1, key_);
         prep.setLong(2, value_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void insertLongByString(String table_, String key_, long value_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             insertLongByString(con, table_, key_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -1029,16 +1165,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void insertLongByLong(Connection con_, String table_, long key_, long value_) throws SQLException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("INSERT INTO " + table_ + " VALUES(?, ?)");
+        prep = prepare(con_, StatementCache.Op.INSERT, table_, null, null);
         prep.setLong(1, key_);
         prep.setLong(2, value_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void insertLongByLong(String table_, long key_, long value_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             insertLongByLong(con, table_, key_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -1047,16 +1184,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void insertFloatByString(Connection con_, String table_, String key_, float value_) throws SQLException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("INSERT INTO " + table_ + " VALUES(?, ?)");
+        prep = prepare(con_, StatementCache.Op.INSERT, table_, null, null);
         prep.setString(1, key_);
         prep.setFloat(2, value_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void insertFloatByString(String table_, String key_, float value_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             insertFloatByString(con, table_, key_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -1065,16 +1203,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void insertFloatByLong(Connection con_, String table_, long key_, float value_) throws SQLException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("INSERT INTO " + table_ + " VALUES(?, ?)");
+        prep = prepare(con_, StatementCache.Op.INSERT, table_, null, null);
         prep.setLong(1, key_);
         prep.setFloat(2, value_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void insertFloatByLong(String table_, long key_, float value_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             insertFloatByLong(con, table_, key_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -1083,16 +1222,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void insertStringByString(Connection con_, String table_, String key_, String value_) throws SQLException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("INSERT INTO " + table_ + " VALUES(?, ?)");
+        prep = prepare(con_, StatementCache.Op.INSERT, table_, null, null);
         prep.setString(1, key_);
         prep.setString(2, value_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void insertStringByString(String table_, String key_, String value_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             insertStringByString(con, table_, key_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -1101,16 +1241,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void insertStringByLong(Connection con_, String table_, long key_, String value_) throws SQLException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("INSERT INTO " + table_ + " VALUES(?, ?)");
+        prep = prepare(con_, StatementCache.Op.INSERT, table_, null, null);
         prep.setLong(1, key_);
         prep.setString(2, value_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void insertStringByLong(String table_, long key_, String value_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             insertStringByLong(con, table_, key_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -1119,16 +1260,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void insertBlobByString(Connection con_, String table_, String key_, byte[] value_) throws SQLException, IOException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("INSERT INTO " + table_ + " VALUES(?, ?)");
+        prep = prepare(con_, StatementCache.Op.INSERT, table_, null, null);
         prep.setString(1, key_);
         prep.setBytes(2, value_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void insertBlobByString(String table_, String key_, byte[] value_) throws SQLException, IOException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             insertBlobByString(con, table_, key_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -1137,16 +1279,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void insertBlobByLong(Connection con_, String table_, long key_, byte[] value_) throws SQLException, IOException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("INSERT INTO " + table_ + " VALUES(?, ?)");
+        prep = prepare(con_, StatementCache.Op.INSERT, table_, null, null);
         prep.setLong(1, key_);
         prep.setBytes(2, value_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void insertBlobByLong(String table_, long key_, byte[] value_) throws SQLException, IOException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             insertBlobByLong(con, table_, key_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -1158,16 +1301,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     
     public void insertLongByString(Connection con_, String table_, String keycolumn_, String key_, String valcolumn_, long value_) throws SQLException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("INSERT INTO " + table_ + "(" + keycolumn_ + ", " + valcolumn_ + ") VALUES(?, ?)");
+        prep = prepare(con_, StatementCache.Op.INSERT_COLUMN, table_, keycolumn_, valcolumn_);
         prep.setString(1, key_);
         prep.setLong(2, value_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void insertLongByString(String table_, String keycolumn_, String key_, String valcolumn_, long value_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             insertLongByString(con, table_, keycolumn_, key_, valcolumn_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -1176,16 +1320,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void insertLongByLong(Connection con_, String table_, String keycolumn_, long key_, String valcolumn_, long value_) throws SQLException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("INSERT INTO " + table_ + "(" + keycolumn_ + ", " + valcolumn_ + ") VALUES(?, ?)");
+        prep = prepare(con_, StatementCache.Op.INSERT_COLUMN, table_, keycolumn_, valcolumn_);
         prep.setLong(1, key_);
         prep.setLong(2, value_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void insertLongByLong(String table_, String keycolumn_, long key_, String valcolumn_, long value_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             insertLongByLong(con, table_, keycolumn_, key_, valcolumn_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -1194,16 +1339,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void insertFloatByString(Connection con_, String table_, String keycolumn_, String key_, String valcolumn_, float value_) throws SQLException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("INSERT INTO " + table_ + "(" + keycolumn_ + ", " + valcolumn_ + ") VALUES(?, ?)");
+        prep = prepare(con_, StatementCache.Op.INSERT_COLUMN, table_, keycolumn_, valcolumn_);
         prep.setString(1, key_);
         prep.setFloat(2, value_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void insertFloatByString(String table_, String keycolumn_, String key_, String valcolumn_, float value_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             insertFloatByString(con, table_, keycolumn_, key_, valcolumn_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -1212,16 +1358,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void insertFloatByLong(Connection con_, String table_, String keycolumn_, long key_, String valcolumn_, float value_) throws SQLException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("INSERT INTO " + table_ + "(" + keycolumn_ + ", " + valcolumn_ + ") VALUES(?, ?)");
+        prep = prepare(con_, StatementCache.Op.INSERT_COLUMN, table_, keycolumn_, valcolumn_);
         prep.setLong(1, key_);
         prep.setFloat(2, value_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void insertFloatByLong(String table_, String keycolumn_, long key_, String valcolumn_, float value_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             insertFloatByLong(con, table_, keycolumn_, key_, valcolumn_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -1230,16 +1377,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     }
     public void insertStringByString(Connection con_, String table_, String keycolumn_, String key_, String valcolumn_, String value_) throws SQLException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("INSERT INTO " + table_ + "(" + keycolumn_ + ", " + valcolumn_ + ") VALUES(?, ?)");
+        prep = prepare(con_, StatementCache.Op.INSERT_COLUMN, table_, keycolumn_, valcolumn_);
         prep.setString(1, key_);
         prep.setString(2, value_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void insertStringByString(String table_, String keycolumn_, String key_, String valcolumn_, String value_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             insertStringByString(con, table_, keycolumn_, key_, valcolumn_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -1248,16 +1396,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void insertStringByLong(Connection con_, String table_, String keycolumn_, long key_, String valcolumn_, String value_) throws SQLException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("INSERT INTO " + table_ + "(" + keycolumn_ + ", " + valcolumn_ + ") VALUES(?, ?)");
+        prep = prepare(con_, StatementCache.Op.INSERT_COLUMN, table_, keycolumn_, valcolumn_);
         prep.setLong(1, key_);
         prep.setString(2, value_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void insertStringByLong(String table_, String keycolumn_, long key_, String valcolumn_, String value_) throws SQLException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             insertStringByLong(con, table_, keycolumn_, key_, valcolumn_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -1266,16 +1415,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void insertBlobByString(Connection con_, String table_, String keycolumn_, String key_, String valcolumn_, byte[] value_) throws SQLException, IOException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("INSERT INTO " + table_ + "(" + keycolumn_ + ", " + valcolumn_ + ") VALUES(?, ?)");
+        prep = prepare(con_, StatementCache.Op.INSERT_COLUMN, table_, keycolumn_, valcolumn_);
         prep.setString(1, key_);
         prep.setBytes(2, value_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void insertBlobByString(String table_, String keycolumn_, String key_, String valcolumn_, byte[] value_) throws SQLException, IOException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             insertBlobByString(con, table_, keycolumn_, key_, valcolumn_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
@@ -1284,16 +1434,17 @@ abstract public class DatabaseFrame implements ReloadNotifiable, Manageable {
     } 
     public void insertBlobByLong(Connection con_, String table_, String keycolumn_, long key_, String valcolumn_, byte[] value_) throws SQLException, IOException {
         PreparedStatement prep = null;
-        prep = con_.prepareStatement("INSERT INTO " + table_ + "(" + keycolumn_ + ", " + valcolumn_ + ") VALUES(?, ?)");
+        prep = prepare(con_, StatementCache.Op.INSERT_COLUMN, table_, keycolumn_, valcolumn_);
         prep.setLong(1, key_);
         prep.setBytes(2, value_);
         prep.executeUpdate();
-        prep.close();
+        finish(con_, prep);
     } 
     public void insertBlobByLong(String table_, String keycolumn_, long key_, String valcolumn_, byte[] value_) throws SQLException, IOException {
-        Connection con = connect();
+        Connection con = connectWriter();
         try {
             insertBlobByLong(con, table_, keycolumn_, key_, valcolumn_, value_);
+            con.commit();
             con.close();
         } catch (Exception e) {
             con.close();
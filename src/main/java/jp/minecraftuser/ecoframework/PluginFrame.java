@@ -2,11 +2,14 @@
 package jp.minecraftuser.ecoframework;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import jp.minecraftuser.ecoframework.async.AsyncFrame;
 import jp.minecraftuser.ecoframework.iface.Manageable;
 import jp.minecraftuser.ecoframework.iface.ReloadNotifiable;
 import org.bukkit.Bukkit;
@@ -36,6 +39,7 @@ public abstract class PluginFrame extends JavaPlugin {
     protected HashMap<String, LoggerFrame> loggerMap = null;
     protected ManagerFrame manager = null;
     protected HashMap<UUID, CommandFrame> confirm_cmds;
+    private volatile PluginVersion version = null;
 
     /**
      * 初期化処理
@@ -130,6 +134,9 @@ public abstract class PluginFrame extends JavaPlugin {
             unregisterPluginFrame(plg.getName());
         }
         
+        // 非同期フレームの残処理(DBを閉じる前に書き込みを完了させる)
+        shutdownAsyncFrames();
+
         // DB全部閉じる
         for (DatabaseFrame db : dbMap.values().toArray(new DatabaseFrame[0])) {
             db.close();
@@ -152,6 +159,21 @@ public abstract class PluginFrame extends JavaPlugin {
         log.info("plugin frame ended.");
     }
     
+    /**
+     * 非同期フレーム停止処理
+     * 全ての非同期フレームを並行して残処理モードにし、framework-shutdown-timeout(ミリ秒)の期限内でキューの残りを処理させる
+     */
+    protected void shutdownAsyncFrames() {
+        long timeout = 5000;
+        ConfigFrame cf = getDefaultConfig();
+        if (cf != null) {
+            cf.registerLong("framework-shutdown-timeout", true);
+            Long t = cf.getLong("framework-shutdown-timeout");
+            if (t != null) timeout = t;
+        }
+        AsyncFrame.shutdownAll(this, timeout);
+    }
+
     /**
      * 依存プラグイン登録処理
      * @param name プラグイン名
@@ -400,6 +422,21 @@ public abstract class PluginFrame extends JavaPlugin {
     public ConfigFrame getDefaultConfig() {
         return confMap.get("config");
     }
+
+    /**
+     * プラグインバージョン情報取得処理
+     * 初回呼び出し時に解析し、以降は解析済みのインスタンスを返却する
+     * @return プラグインバージョン情報
+     */
+    public PluginVersion getPluginVersion() {
+        PluginVersion v = version;
+        if (v == null) {
+            // 複数スレッドから同時に初回呼び出しされた場合は重複して解析するが結果は同一のため許容する
+            v = new PluginVersion(this);
+            version = v;
+        }
+        return v;
+    }
     
     /**
      * 設定登録処理
@@ -504,6 +541,14 @@ public abstract class PluginFrame extends JavaPlugin {
         return dbMap.get(name);
     }
 
+    /**
+     * DB一覧取得処理
+     * @return 一覧登録名とデータベースフレームインスタンスの読み取り専用Map
+     */
+    public Map<String, DatabaseFrame> getDatabaseList() {
+        return Collections.unmodifiableMap(dbMap);
+    }
+
     /**
      * DB登録処理
      * @param frame_ タイマーフレームインスタンス
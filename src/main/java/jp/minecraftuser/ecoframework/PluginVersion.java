@@ -0,0 +1,117 @@
+
+package jp.minecraftuser.ecoframework;
+
+import java.io.Serializable;
+
+/**
+ * プラグインバージョン情報クラス
+ * plugin.ymlのversionを1度だけ解析して保持する(PluginFrame単位で共有する不変オブジェクト)
+ * @author ecolight
+ */
+public final class PluginVersion implements Serializable {
+    private final String name;
+    private final long major;
+    private final long minor;
+    private final long revision;
+    private final boolean snapshot;
+    private final String version;
+
+    /**
+     * コンストラクタ
+     * @param plg_ プラグインインスタンス
+     */
+    public PluginVersion(PluginFrame plg_) {
+        name = plg_.getDescription().getName();
+        long[] num = {-1, -1, -1};
+        boolean snap = false;
+        String[] versions = plg_.getDescription().getVersion().split("[. -]");
+        for (String s : versions) {
+            try {
+                if (s.equalsIgnoreCase("snapshot")) {
+                    snap = true;
+                    continue;
+                }
+                long n = Long.parseLong(s);
+                for (int i = 0; i < num.length; i++) {
+                    if (num[i] == -1) {
+                        num[i] = n;
+                        break;
+                    }
+                }
+            } catch (NumberFormatException e) {
+                plg_.getLogger().info(e.getLocalizedMessage());
+                plg_.getLogger().info("Payload:version解析不能文字検出[" + s);
+            }
+        }
+        major = num[0];
+        minor = num[1];
+        revision = num[2];
+        snapshot = snap;
+
+        StringBuilder sb = new StringBuilder();
+        if (major != -1) {
+            sb.append(major);
+        }
+        if (minor != -1) {
+            sb.append(".");
+            sb.append(minor);
+        }
+        if (revision != -1) {
+            sb.append(".");
+            sb.append(revision);
+        }
+        if (snapshot) {
+            sb.append("-SNAPSHOT");
+        }
+        version = sb.toString();
+    }
+
+    /**
+     * プラグイン名
+     * @return プラグイン名
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * バージョン(Major)
+     * @return バージョン(Major) 解析できなかった場合は-1
+     */
+    public long getMajor() {
+        return major;
+    }
+
+    /**
+     * バージョン(Minor)
+     * @return バージョン(Minor) 解析できなかった場合は-1
+     */
+    public long getMinor() {
+        return minor;
+    }
+
+    /**
+     * バージョン(Revision)
+     * @return バージョン(Revision) 解析できなかった場合は-1
+     */
+    public long getRevision() {
+        return revision;
+    }
+
+    /**
+     * Snapshot判定
+     * @return Snapshot判定
+     */
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * バージョン文字列
+     * @return 解析した数値部分とSNAPSHOT指定から再構成したバージョン
+     */
+    @Override
+    public String toString() {
+        return version;
+    }
+}
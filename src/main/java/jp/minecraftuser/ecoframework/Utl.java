@@ -2,6 +2,7 @@
 package jp.minecraftuser.ecoframework;
 
 import java.text.MessageFormat;
+import java.util.regex.Pattern;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
@@ -11,6 +12,8 @@ import org.bukkit.entity.Player;
  * @author ecolight
  */
 public class Utl {
+    private static final Pattern COLOR = Pattern.compile("&([0-9A-Fa-flLmMnNoOkKrR])");
+
     /**
      * 色置換処理
      * &記号で書かれた色指定をセクション記号に置き換える
@@ -19,16 +22,18 @@ public class Utl {
      * @return 
      */
     public static String repColor(String msg) {
-        return msg.replaceAll("&([0-9A-Fa-flLmMnNoOkKrR])", "§$1").replaceAll("　", "  ");
+        return COLOR.matcher(msg).replaceAll("§$1").replace("　", "  ");
     }
 
     /**
-     * メッセージ送信処理(PluginPrefix)
+     * メッセージ整形処理(PluginPrefix)
+     * 送信先に応じたプラグイン名のプリフィックスを付与する
      * @param plg プラグインインスタンス
      * @param sender 送信者インスタンス(nullの場合ブロードキャスト)
      * @param msg 送信文字列
+     * @return 整形した文字列
      */
-    public static void sendPluginMessage(PluginFrame plg, CommandSender sender, String msg) {
+    public static String formatPluginMessage(PluginFrame plg, CommandSender sender, String msg) {
         StringBuilder sb = new StringBuilder();
         if (sender instanceof Player) {
             sb.append(ChatColor.YELLOW);
@@ -42,40 +47,52 @@ public class Utl {
             sb.append("] ");
         }
         sb.append(msg);
+        return sb.toString();
+    }
+
+    /**
+     * メッセージ整形処理(PluginPrefix)
+     * @param plg プラグインインスタンス
+     * @param sender 送信者インスタンス(nullの場合ブロードキャスト)
+     * @param msg 送信文字列
+     * @param param フォーマット文字列
+     * @return 整形した文字列
+     */
+    public static String formatPluginMessage(PluginFrame plg, CommandSender sender, String msg, String... param) {
+        MessageFormat mf = new MessageFormat(msg);
+        return formatPluginMessage(plg, sender, mf.format(param));
+    }
+
+    /**
+     * メッセージ送信処理(PluginPrefix)
+     * @param plg プラグインインスタンス
+     * @param sender 送信者インスタンス(nullの場合ブロードキャスト)
+     * @param msg 送信文字列
+     */
+    public static void sendPluginMessage(PluginFrame plg, CommandSender sender, String msg) {
+        String str = formatPluginMessage(plg, sender, msg);
         if (sender != null) {
-            sender.sendMessage(sb.toString());
+            sender.sendMessage(str);
         } else {
-            plg.getServer().broadcastMessage(sb.toString());
+            plg.getServer().broadcastMessage(str);
         }
     }
 
 
     /**
      * メッセージ送信処理(PluginPrefix)
+     * メインスレッドの負荷を下げたい場合はMessageAsyncFrameでテンプレート指定のMessagePayloadを使用すること
      * @param plg プラグインインスタンス
      * @param sender 送信者インスタンス(nullの場合ブロードキャスト)
      * @param msg 送信文字列
      * @param param フォーマット文字列
      */
     public static void sendPluginMessage(PluginFrame plg, CommandSender sender, String msg, String... param) {
-        MessageFormat mf = new MessageFormat(msg);
-        StringBuilder sb = new StringBuilder();
-        if (sender instanceof Player) {
-            sb.append(ChatColor.YELLOW);
-            sb.append("[");
-            sb.append(plg.getName());
-            sb.append("] ");
-            sb.append(ChatColor.RESET);
-        } else {
-            sb.append("[");
-            sb.append(plg.getName());
-            sb.append("] ");
-        }
-        sb.append(mf.format(param));
+        String str = formatPluginMessage(plg, sender, msg, param);
         if (sender != null) {
-            sender.sendMessage(sb.toString());
+            sender.sendMessage(str);
         } else {
-            plg.getServer().broadcastMessage(sb.toString());
+            plg.getServer().broadcastMessage(str);
         }
     }
 
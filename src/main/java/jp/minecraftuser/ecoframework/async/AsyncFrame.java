@@ -1,20 +1,66 @@
 
 package jp.minecraftuser.ecoframework.async;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 import jp.minecraftuser.ecoframework.PluginFrame;
 import jp.minecraftuser.ecoframework.TimerFrame;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
 
 /**
  * 汎用非同期処理クラス
  * @author ecolight
  */
 public abstract class AsyncFrame extends TimerFrame {
-    private boolean end = false;
-    private boolean persist = false;
+    // 稼働中の親スレッドインスタンス(プラグイン停止時の残処理、統計参照用)
+    private static final Set<AsyncFrame> ACTIVE = ConcurrentHashMap.newKeySet();
+    // 子スレッド処理が例外で終了した場合の再起動までの待機時間(ミリ秒)
+    private static final long RESTART_DELAY = 1000;
+    // 再起動までの待機時間の上限(ミリ秒) 連続して再起動する毎に待機時間を倍にする
+    private static final long RESTART_DELAY_MAX = 60000;
+    // 再起動の連続回数を数え直すまでの稼働時間(ミリ秒)
+    private static final long RESTART_RESET = 60000;
+    private final AtomicReference<FrameState> state = new AtomicReference<>(FrameState.STARTING);
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private volatile boolean persist = false;
     protected boolean parent = true;
     protected AsyncFrame childFrame = null;
+    protected AsyncFrame[] childFrames = null;
     protected AsyncFrame parentFrame = null;
-    protected boolean childend = false;
+    // 子スレッドの停止指示(継承先のループから参照されるため状態とは別に保持する)
+    protected volatile boolean childend = false;
+    private volatile Thread worker = null;
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger roundRobin = new AtomicInteger();
+    private final AtomicInteger restarts = new AtomicInteger();
+    // 再起動の連続回数上限(親スレッドインスタンスのみ使用 0以下の場合は上限なし)
+    private volatile int restartMax = 10;
+    // 共有ワーカープールでの連続失敗回数(子スレッドインスタンスのみ使用)
+    private int restartStreak = 0;
+    // 再起動の連続回数上限により停止した場合true(子スレッドインスタンスのみ使用)
+    private volatile boolean halted = false;
+    private volatile long period = 0;
+    private boolean virtual = false;
+    // 共有ワーカープールで実行する場合のプール(子スレッドインスタンスのみ)
+    private AsyncWorkerPool pool = null;
+    // 共有ワーカープールの処理待ち、または処理中(AsyncWorkerPoolで使用)
+    final AtomicBoolean sliceQueued = new AtomicBoolean();
+    private volatile boolean sliceDone = false;
+    private CountDownLatch terminated = null;
+    private volatile long drainDeadline = 0;
+    private FrameMetrics metrics = null;
 
     /**
      * コンストラクタ
@@ -22,12 +68,56 @@ public abstract class AsyncFrame extends TimerFrame {
      * @param name_ 名前
      */
     public AsyncFrame(PluginFrame plg_, String name_) {
+        this(plg_, name_, 1);
+    }
+
+    /**
+     * コンストラクタ(子スレッド数指定)
+     * 子スレッドを複数生成した場合、selectChildで振り分け先の子スレッドを決定する
+     * @param plg_ プラグインインスタンス
+     * @param name_ 名前
+     * @param workers_ 子スレッド数(1未満の場合は1)
+     */
+    public AsyncFrame(PluginFrame plg_, String name_, int workers_) {
         super(plg_, name_);
         // インスタンス生成時は子スレッドを生成する
         if ((childFrame == null) && (parent)) {
-            childFrame = clone();
+            // 統計は子スレッド起動前に生成しておく
+            metrics = new FrameMetrics();
+            int n = Math.max(1, workers_);
+            childFrames = new AsyncFrame[n];
+            for (int i = 0; i < n; i++) {
+                childFrames[i] = clone();
+            }
+            childFrame = childFrames[0];
+            running.set(n);
+            terminated = new CountDownLatch(n);
+            ACTIVE.add(this);
+            if (n > 1) log.info("create " + n + " child thread frames.");
+            loadRestartMax();
             // 子プロセスをキックする
-            childFrame.runTaskAsynchronously(plg);
+            String executor = loadExecutor();
+            for (int i = 0; i < n; i++) {
+                AsyncFrame f = childFrames[i];
+                if (executor.equals("virtual")) {
+                    // 仮想スレッドで起動する場合はBukkitスケジューラを経由しない
+                    // 起動できなかった場合は当該子スレッドのみBukkitスケジューラで起動する
+                    f.virtual = true;
+                    try {
+                        VirtualThreads.start(plg.getName() + "-" + name + "-" + i, f);
+                    } catch (IllegalStateException ex) {
+                        log.log(Level.WARNING, "failed to start virtual thread. fallback to bukkit scheduler.", ex);
+                        f.virtual = false;
+                        f.runTaskAsynchronously(plg);
+                    }
+                } else if (executor.equals("shared")) {
+                    // 共有ワーカープールで実行する場合は専用のスレッドを持たない
+                    f.startShared(AsyncWorkerPool.get());
+                } else {
+                    f.runTaskAsynchronously(plg);
+                }
+            }
+            state.compareAndSet(FrameState.STARTING, FrameState.RUNNING);
         }
     }
 
@@ -37,34 +127,173 @@ public abstract class AsyncFrame extends TimerFrame {
         parentFrame = frame_;
     }
 
+    /**
+     * 子スレッド再起動上限設定読み込み処理
+     */
+    private void loadRestartMax() {
+        // framework-restart-max設定値があれば使用する
+        // 子スレッド処理が例外で連続して終了した場合の再起動回数の上限 超過した場合はフレームを停止する
+        conf.registerLong("framework-restart-max", true);
+        Long max = conf.getLong("framework-restart-max");
+        // 無ければ10回
+        if (max != null) {
+            restartMax = max.intValue();
+            log.info("framework-restart-max:" + restartMax);
+        }
+    }
+
+    /**
+     * 子スレッド処理の再起動可否判定
+     * 連続回数が上限を超過した場合はフレームの全子スレッドに停止を指示する
+     * @param streak_ 連続して例外で終了した回数
+     * @return 再起動する場合true
+     */
+    private boolean allowRestart(int streak_) {
+        int max = parentFrame.restartMax;
+        if ((max <= 0) || (streak_ <= max)) {
+            return true;
+        }
+        halted = true;
+        log.severe("子スレッド処理の再起動回数が上限[" + max + "]を超過したためフレームを停止します");
+        parentFrame.childStop();
+        return false;
+    }
+
+    /**
+     * 子スレッド実行方式設定読み込み処理
+     * framework-executor: bukkit(Bukkitスケジューラの非同期タスク 従来動作) / virtual(仮想スレッド Java21以降) / shared(共有ワーカープール)
+     * 仮想スレッドは待機中にプラットフォームスレッドを占有しないため、多数のフレームを生成するプラグイン向け
+     * ただしJava21～23ではsynchronized内でのブロッキングI/O(JDBCドライバ等)中はキャリアスレッドを占有する点に注意
+     * 共有ワーカープールは全プラグインのフレームをCPUコア数に応じたスレッド数で処理する
+     * childRunをオーバーライドしているフレーム等、共有ワーカープールで実行できない場合はbukkitで起動する
+     * @return 実行方式(bukkit/virtual/shared)
+     */
+    private String loadExecutor() {
+        conf.registerString("framework-executor", true);
+        String executor = conf.getString("framework-executor");
+        if (executor == null) {
+            return "bukkit";
+        }
+        if (executor.equalsIgnoreCase("virtual")) {
+            if (!VirtualThreads.isSupported()) {
+                log.info("framework-executor:virtual is not supported on this runtime. fallback to bukkit scheduler.");
+                return "bukkit";
+            }
+            log.info("framework-executor:virtual");
+            return "virtual";
+        }
+        if (executor.equalsIgnoreCase("shared")) {
+            if (!childFrame.isSliceable()) {
+                log.info("framework-executor:shared is not supported by this frame. fallback to bukkit scheduler.");
+                return "bukkit";
+            }
+            log.info("framework-executor:shared");
+            return "shared";
+        }
+        return "bukkit";
+    }
+
     /**
      * 停止指示処理
      * 子スレッドから親スレッドに対してコールされる
      */
     private final void stop() {
-        synchronized (this) {
-            if (persist) {
-                log.info("detect child thread frame stopped. persist mode is valid so stop parent thread frame manually.");
-            } else {
-                end = true;
-                log.info("set parent thread frame end flag.");
+        // 複数の子スレッドがある場合は全ての子スレッドが停止するまで待つ
+        if (running.decrementAndGet() > 0) {
+            return;
+        }
+        if (persist) {
+            log.info("detect child thread frame stopped. persist mode is valid so stop parent thread frame manually.");
+        } else {
+            state.set(FrameState.STOPPED);
+            log.info("set parent thread frame end state.");
+        }
+    }
+
+    /**
+     * 状態遷移
+     * @param to_ 遷移先の状態
+     * @param from_ 遷移元として許容する状態
+     * @return 遷移した場合true
+     */
+    private boolean transition(FrameState to_, FrameState... from_) {
+        while (true) {
+            FrameState s = state.get();
+            boolean match = false;
+            for (FrameState f : from_) {
+                if (s == f) {
+                    match = true;
+                    break;
+                }
+            }
+            if (!match) {
+                return false;
+            }
+            if (state.compareAndSet(s, to_)) {
+                return true;
             }
         }
     }
 
+    /**
+     * 状態取得
+     * @return 本インスタンス(親スレッドまたは子スレッド)の状態
+     */
+    public final FrameState getState() {
+        return state.get();
+    }
+
     /**
      * 子スレッドへの停止指示
      * 子スレッドでは childend 変数を監視して ture になった場合は迅速に処理を完了すること
      */
     public final void childStop() {
-        synchronized (this) {
-            if (parent) {
-                childFrame.childStop();
-            } else {
-                childend = true;
-                log.info("set child thread frame end flag.");
+        if (parent) {
+            for (AsyncFrame f : childFrames) {
+                f.childStop();
+            }
+        } else {
+            // 親スレッドが残処理モードの場合は子スレッドも残処理を行ってから終了する
+            if (parentFrame.state.get() == FrameState.DRAINING) {
+                transition(FrameState.DRAINING, FrameState.STARTING, FrameState.RUNNING);
             }
+            childend = true;
+            log.info("set child thread frame end flag.");
         }
+        // 待機中の子スレッドを起こして停止指示を検出させる
+        wakeup();
+    }
+
+    /**
+     * 子スレッドの起床指示
+     * waitSignalで待機中の子スレッドを即時起床させる
+     * 子スレッド未起動の場合は何もしない(起動後の初回処理でキューを確認するため取りこぼさない)
+     */
+    protected final void wakeup() {
+        if (pool != null) {
+            pool.signal(this);
+            return;
+        }
+        Thread t = worker;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * 子スレッドの待機処理
+     * wakeupされるか、指定時間が経過するまで子スレッドを待機させる
+     * 子スレッド以外から呼び出した場合は何もしない
+     * 共有ワーカープールで実行中の場合は起床指示を受けずに指定時間待機する(残処理の待機用)
+     * @param millis 最大待機時間(ミリ秒)
+     */
+    protected final void waitSignal(long millis) {
+        if (pool != null) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(millis));
+            return;
+        }
+        if (Thread.currentThread() != worker) return;
+        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(millis));
     }
 
     /**
@@ -74,9 +303,7 @@ public abstract class AsyncFrame extends TimerFrame {
      */
     public final void setPersist() {
         if (parent) {
-            synchronized (this) {
-                persist = true;
-            }
+            persist = true;
         } else {
             parentFrame.setPersist();
         }
@@ -104,39 +331,511 @@ public abstract class AsyncFrame extends TimerFrame {
             parentRun();
 
             // 子スレッドから停止指示を受けている場合はキャンセル処理を行う
-            synchronized (this) {
-                if (end) {
-                    cancel();
-                }
+            if (state.get() == FrameState.STOPPED) {
+                cancel();
             }
         }
         // 子スレッドでは継承先で実装する子スレッド用メソッドをコールする
         // runTaskAsynchronouslyで単発呼び出し
         else {
             log.info("Start child thread method.");
-            childRun();
-            log.info("Ended child thread method.");
+            worker = Thread.currentThread();
+            transition(FrameState.RUNNING, FrameState.STARTING);
+            try {
+                int streak = 0;
+                while (true) {
+                    long started = System.nanoTime();
+                    try {
+                        childRun();
+                        break;
+                    } catch (RuntimeException ex) {
+                        // 例外で終了した場合は子スレッド処理を再起動する(停止指示を受けている場合は終了する)
+                        restarts.incrementAndGet();
+                        log.log(Level.SEVERE, "child thread method failed.", ex);
+                        if (childend) break;
+                        // 一定時間稼働していた場合は連続回数を数え直し、連続する場合は待機時間を倍にする
+                        if (System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(RESTART_RESET)) {
+                            streak = 0;
+                        }
+                        streak++;
+                        if (!allowRestart(streak)) break;
+                        waitSignal(Math.min(RESTART_DELAY_MAX, RESTART_DELAY << Math.min(streak - 1, 16)));
+                        if (childend) break;
+                        log.info("Restart child thread method.");
+                    }
+                }
+            } finally {
+                childDone();
+                log.info("Ended child thread method.");
+                parentFrame.stop();
+            }
+        }
+    }
+
+    /**
+     * 子スレッド処理の終了処理
+     */
+    private void childDone() {
+        state.set(FrameState.STOPPED);
+        worker = null;
+        parentFrame.terminated.countDown();
+    }
+
+    /**
+     * 共有ワーカープールでの処理開始
+     * 子スレッドインスタンスをプールに登録し、以降はrunSliceを繰り返し呼び出させる
+     * @param pool_ 共有ワーカープール
+     */
+    private void startShared(AsyncWorkerPool pool_) {
+        pool = pool_;
+        log.info("Start child thread method. (shared)");
+        transition(FrameState.RUNNING, FrameState.STARTING);
+        sliceBegin();
+        pool_.register(this);
+    }
+
+    /**
+     * 共有ワーカープールでの1回分の処理
+     * AsyncWorkerPoolのワーカースレッドから呼び出される
+     * 停止指示を受けている場合は残処理と終了処理を行う
+     * @param quantum_ 1回で処理する最大件数
+     */
+    final void runShared(int quantum_) {
+        if (sliceDone) {
+            return;
+        }
+        boolean more;
+        try {
+            more = !childend && runSlice(quantum_);
+            restartStreak = 0;
+        } catch (RuntimeException ex) {
+            // 例外発生時も登録を維持し、次回の割り当てで処理を再開する(連続回数が上限を超過した場合は停止する)
+            restarts.incrementAndGet();
+            log.log(Level.SEVERE, "shared worker slice failed.", ex);
+            more = allowRestart(++restartStreak);
+        }
+        if (childend) {
+            finishShared();
+            return;
+        }
+        // 処理中の追加分は処理待ちに戻す(到着順の末尾に回してフレーム間で公平にする)
+        // 処理中に受けた停止指示は通知が重複判定で捨てられるため、ここで再確認する
+        sliceQueued.set(false);
+        if (childend || more || hasWork()) {
+            pool.signal(this);
+        }
+    }
+
+    /**
+     * 停止処理待ち判定
+     * @return 停止指示を受けて終了処理が未実施の場合true
+     */
+    boolean isStopPending() {
+        return childend && !sliceDone;
+    }
+
+    /**
+     * 共有ワーカープールでの処理終了
+     * 残処理、終了時処理を行ってからプールの登録を解除する
+     */
+    private void finishShared() {
+        sliceDone = true;
+        try {
+            sliceEnd();
+        } finally {
+            pool.unregister(this);
+            childDone();
+            log.info("Ended child thread method. (shared)");
             parentFrame.stop();
         }
     }
 
+    /**
+     * 共有ワーカープール対応判定
+     * @return 共有ワーカープールで実行できる場合true
+     */
+    boolean isSliceable() {
+        return false;
+    }
+
+    /**
+     * 共有ワーカープールでの処理開始時処理(childRunの開始部分に相当)
+     */
+    void sliceBegin() {
+    }
+
+    /**
+     * 共有ワーカープールでの1回分の処理(childRunのループ1回分に相当)
+     * 待機せずに処理可能な分のみ処理すること
+     * @param quantum_ 処理する最大件数
+     * @return 処理可能なDataが残っている場合true
+     */
+    boolean runSlice(int quantum_) {
+        return false;
+    }
+
+    /**
+     * 共有ワーカープールでの処理終了時処理(childRunのループ終了後に相当)
+     */
+    void sliceEnd() {
+    }
+
+    /**
+     * 処理可能なData有無判定
+     * @return 待機せずに処理可能なDataがある場合true
+     */
+    boolean hasWork() {
+        return false;
+    }
+
+    /**
+     * メソッドのオーバーライド判定
+     * 共有ワーカープールでは継承先のchildRunを呼び出さないため、オーバーライドされている場合は対象外とする
+     * @param base_ 判定の基準クラス
+     * @param method_ 引数なしのメソッド名
+     * @return 基準クラスより下位のクラスでオーバーライドされている場合true
+     */
+    final boolean isOverridden(Class<?> base_, String method_) {
+        for (Class<?> c = getClass(); (c != null) && (c != base_); c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(method_);
+                return true;
+            } catch (NoSuchMethodException ex) {
+                // 上位クラスを確認する
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 定期実行開始処理
+     * 親スレッドの呼び出し間隔を時間予算の調整に使用するため保持しておく
+     * @param plugin プラグインインスタンス
+     * @param delay 初回実行までのディレイ(tick)
+     * @param period 2回目以降の実行インターバル(tick)
+     * @return 実行したタスク
+     */
+    @Override
+    public synchronized BukkitTask runTaskTimer(Plugin plugin, long delay, long period) {
+        this.period = period;
+        return super.runTaskTimer(plugin, delay, period);
+    }
+
+    /**
+     * 親スレッド呼び出し間隔取得
+     * @return runTaskTimerで指定された実行インターバル(tick) 不明な場合は0
+     */
+    public long getTickPeriod() {
+        return period;
+    }
+
     /**
      * キャンセル処理
      * キャンセルの際に管理している子スレッドのタイマーもキャンセルする
+     * 親スレッドインスタンスは2回目以降の呼び出しでは何もしない
      * @throws IllegalStateException
      */
     @Override
-    public final synchronized void cancel() throws IllegalStateException {
-        super.cancel();
+    public final void cancel() throws IllegalStateException {
         if (parent) {
-            log.info("canceled parent thread.");
-        } else {
-            log.info("canceled child thread.");
+            if (!cancelled.compareAndSet(false, true)) {
+                return;
+            }
+            state.set(FrameState.STOPPED);
+        }
+        try {
+            // 仮想スレッド、共有ワーカープールで起動した子スレッドはBukkitスケジューラに登録されていない
+            if (!virtual && (pool == null)) {
+                super.cancel();
+            }
+        } finally {
+            if (parent) {
+                log.info("canceled parent thread.");
+            } else {
+                log.info("canceled child thread.");
+            }
+            if((childFrame != null) && (parent)) {
+                ACTIVE.remove(this);
+                childStop();
+                for (AsyncFrame f : childFrames) {
+                    f.cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * 残処理モードへの移行
+     * 新たな処理依頼の受付を停止し、子スレッドには期限までキューの残りを処理してから終了するよう指示する
+     * 親スレッド側の残りはdrainParentで処理すること
+     * @param deadline_ 期限(System.nanoTime基準)
+     */
+    public final void beginDrain(long deadline_) {
+        if (!parent) {
+            parentFrame.beginDrain(deadline_);
+            return;
+        }
+        drainDeadline = deadline_;
+        transition(FrameState.DRAINING, FrameState.STARTING, FrameState.RUNNING);
+        log.info("begin drain async frame [" + name + "]");
+        childStop();
+    }
+
+    /**
+     * 受付停止判定
+     * @return 親スレッドが残処理中または停止済み(新たな処理依頼を受け付けない)の場合true
+     */
+    public final boolean isDraining() {
+        if (!parent) {
+            return parentFrame.isDraining();
+        }
+        FrameState s = state.get();
+        return (s == FrameState.DRAINING) || (s == FrameState.STOPPED);
+    }
+
+    /**
+     * 残処理期限超過判定
+     * 子スレッドの状態がDRAININGの間に使用すること
+     * @return 残処理の期限を過ぎている場合true
+     */
+    protected final boolean isDrainExpired() {
+        long deadline = parent ? drainDeadline : parentFrame.drainDeadline;
+        return System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * 子スレッド終了判定
+     * @return 全ての子スレッドの処理が終了している場合true
+     */
+    public final boolean isTerminated() {
+        if (!parent) {
+            return parentFrame.isTerminated();
+        }
+        return terminated.getCount() == 0;
+    }
+
+    /**
+     * 子スレッド終了待ち
+     * @param timeout 最大待機時間
+     * @param unit 最大待機時間の単位
+     * @return 全ての子スレッドの処理が終了した場合true
+     */
+    public final boolean awaitTermination(long timeout, TimeUnit unit) {
+        if (!parent) {
+            return parentFrame.awaitTermination(timeout, unit);
+        }
+        try {
+            return terminated.await(timeout, unit);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 親スレッド側の残処理
+     * 残処理モードで親スレッド(メインスレッド)から呼び出され、期限まで親スレッド側キューの残りを処理する
+     * @param deadline_ 期限(System.nanoTime基準)
+     */
+    public void drainParent(long deadline_) {
+    }
+
+    /**
+     * 未処理件数取得
+     * 残処理モードの終了時に破棄される件数の報告に使用する
+     * @return 親スレッド、子スレッドのキューに残っている件数
+     */
+    public long getPendingCount() {
+        return 0;
+    }
+
+    /**
+     * 残処理中の拒否件数取得
+     * 残処理モードの終了時に破棄された件数の報告に使用する
+     * @return 残処理中に受付を拒否した件数
+     */
+    public long getDrainRejectedCount() {
+        return 0;
+    }
+
+    /**
+     * 稼働中の非同期フレーム取得
+     * @param plg_ プラグインインスタンス(nullの場合は全プラグイン)
+     * @return 指定プラグインの稼働中の親スレッドインスタンス
+     */
+    public static List<AsyncFrame> getActiveFrames(Plugin plg_) {
+        List<AsyncFrame> list = new ArrayList<>();
+        for (AsyncFrame f : ACTIVE) {
+            if ((plg_ == null) || (f.plg == plg_)) {
+                list.add(f);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 非同期フレームの一括停止
+     * 指定プラグインの全フレームを並行して残処理モードにし、全体で1つの期限内に残処理を行わせてから停止する
+     * メインスレッドから呼び出すこと(親スレッド側の残処理を呼び出し元で行う)
+     * @param plg_ プラグインインスタンス
+     * @param timeout 全体の最大待機時間(ミリ秒)
+     */
+    public static void shutdownAll(PluginFrame plg_, long timeout) {
+        List<AsyncFrame> frames = getActiveFrames(plg_);
+        if (frames.isEmpty()) {
+            SyncCallBridge.close(plg_);
+            return;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        for (AsyncFrame f : frames) {
+            f.beginDrain(deadline);
+        }
+        // 子スレッドの処理結果を受け取りながら全ての子スレッドが終了するまで待つ
+        while (true) {
+            boolean done = true;
+            // 残処理中の子スレッドからのメインスレッド呼び出しに応答する
+            SyncCallBridge.runPending(plg_);
+            for (AsyncFrame f : frames) {
+                f.drainParent(deadline);
+                done &= f.isTerminated();
+            }
+            if (done || (System.nanoTime() - deadline >= 0)) {
+                break;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        for (AsyncFrame f : frames) {
+            f.drainParent(deadline);
+            long n = f.getPendingCount();
+            if (n > 0) {
+                plg_.getLogger().warning("async frame [" + f.getName() + "] shutdown deadline exceeded. dropped:" + n);
+            }
+            long r = f.getDrainRejectedCount();
+            if (r > 0) {
+                plg_.getLogger().warning("async frame [" + f.getName() + "] rejected while draining:" + r);
+            }
+            try {
+                f.cancel();
+            } catch (IllegalStateException ex) {
+                // タイマー未起動の場合(子スレッドへの停止指示は完了している)
+            }
+        }
+        SyncCallBridge.close(plg_);
+    }
+
+    /**
+     * メインスレッド呼び出し
+     * 子スレッドからBukkitのメインスレッドでしか扱えない値(プレイヤーの位置、オンライン判定等)を取得する場合に使用する
+     * 依頼はプラグイン単位で集約し、次tickのメインスレッド処理でまとめて実行する
+     * メインスレッドは子スレッドを待機しないため、子スレッド側でFutureを待機してもメインスレッドは停止しない
+     * 子スレッドでgetする場合は停止時に備えてタイムアウトを指定すること
+     * @param <T> 戻り値型
+     * @param task_ メインスレッドで実行する処理(例外はFutureの異常完了として返却する)
+     * @return 実行結果を受け取るFuture(メインスレッドで完了する)
+     */
+    protected final <T> CompletableFuture<T> callSync(Supplier<T> task_) {
+        return SyncCallBridge.get(plg).call(task_);
+    }
+
+    /**
+     * 振り分け先子スレッドの選択
+     * 同一キーは常に同一の子スレッドに振り分けるため、キー単位の処理順序は保たれる
+     * キーがnullの場合は子スレッド間で順番に振り分ける(処理順序は保証しない)
+     * @param key_ 振り分けキー
+     * @return 子スレッドインスタンス
+     */
+    protected final AsyncFrame selectChild(Object key_) {
+        int n = childFrames.length;
+        if (n == 1) {
+            return childFrame;
+        }
+        if (key_ == null) {
+            return childFrames[Math.floorMod(roundRobin.getAndIncrement(), n)];
         }
-        if((childFrame != null) && (parent)) {
-            childStop();
-            childFrame.cancel();
+        int h = key_.hashCode();
+        return childFrames[Math.floorMod(h ^ (h >>> 16), n)];
+    }
+
+    /**
+     * 仮想スレッド実行判定
+     * @return 子スレッドを仮想スレッドで実行している場合true
+     */
+    public boolean isVirtual() {
+        if (parent) {
+            return childFrame.virtual;
+        }
+        return virtual;
+    }
+
+    /**
+     * 共有ワーカープール実行判定
+     * @return 子スレッドを共有ワーカープールで実行している場合true
+     */
+    public boolean isShared() {
+        if (parent) {
+            return childFrame.pool != null;
+        }
+        return pool != null;
+    }
+
+    /**
+     * プラグイン名取得
+     * @return フレームを生成したプラグインの名前
+     */
+    public final String getPluginName() {
+        return plg.getName();
+    }
+
+    /**
+     * 処理統計取得
+     * 待ち時間、処理時間、受け渡し遅延のヒストグラムと処理レートを参照できる
+     * @return 処理統計(親スレッドインスタンスで共有)
+     */
+    public final FrameMetrics getMetrics() {
+        return parent ? metrics : parentFrame.getMetrics();
+    }
+
+    /**
+     * 子スレッド再起動回数取得
+     * @return 子スレッド処理が例外で終了し再起動した回数の累計(全子スレッドの合計)
+     */
+    public int getRestartCount() {
+        if (!parent) {
+            return parentFrame.getRestartCount();
+        }
+        int n = 0;
+        for (AsyncFrame f : childFrames) {
+            n += f.restarts.get();
+        }
+        return n;
+    }
+
+    /**
+     * 再起動上限による停止数取得
+     * @return 再起動の連続回数上限を超過して停止した子スレッド数
+     */
+    public int getHaltedCount() {
+        if (!parent) {
+            return parentFrame.getHaltedCount();
+        }
+        int n = 0;
+        for (AsyncFrame f : childFrames) {
+            if (f.halted) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * 子スレッド数取得
+     * @return 子スレッド数
+     */
+    public int getWorkerCount() {
+        if (parent) {
+            return childFrames.length;
         }
+        return parentFrame.getWorkerCount();
     }
     
     /**
@@ -0,0 +1,284 @@
+
+package jp.minecraftuser.ecoframework.async;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import jp.minecraftuser.ecoframework.PluginFrame;
+
+/**
+ * 非同期処理パイプライン
+ * 複数の処理段(解析→DB→通知など)を子スレッド間で直接つなぎ、最終段の結果のみメインスレッドへ受け渡す
+ * 各処理段はAsyncProcessFrameとして動作し、子スレッド数、バッチ処理を個別に指定できる
+ * 次段のキューに容量上限(framework-queue-capacity)とblockを指定した場合、前段の子スレッドが待機するため段間の流量が調整される
+ * <pre>
+ * AsyncPipeline&lt;ChatPayload, ChatPayload&gt; p = AsyncPipeline.&lt;ChatPayload&gt;builder(plg, "chat")
+ *     .stage("parse", d -&gt; parse(d))
+ *     .stage("db", d -&gt; save(d)).workers(2)
+ *     .build(d -&gt; notify(d));
+ * p.start(0, 1);
+ * p.send(new ChatPayload(plg, msg));
+ * </pre>
+ * @author ecolight
+ * @param <I> 先頭段への入力ペイロード型
+ * @param <O> 最終段の出力ペイロード型
+ */
+public final class AsyncPipeline<I extends PayloadFrame, O extends PayloadFrame> {
+    private final PluginFrame plg;
+    private final String name;
+    private final List<PipelineStage> stages;
+
+    /**
+     * コンストラクタ
+     * @param plg_ プラグインフレームインスタンス
+     * @param name_ 名前
+     * @param stages_ 処理段(先頭から順)
+     */
+    private AsyncPipeline(PluginFrame plg_, String name_, List<PipelineStage> stages_) {
+        plg = plg_;
+        name = name_;
+        stages = Collections.unmodifiableList(stages_);
+    }
+
+    /**
+     * パイプライン構築開始
+     * @param <T> 先頭段への入力ペイロード型
+     * @param plg_ プラグインフレームインスタンス
+     * @param name_ 名前(各処理段のフレーム名は 名前-段名 となる)
+     * @return ビルダー
+     */
+    public static <T extends PayloadFrame> Builder<T, T> builder(PluginFrame plg_, String name_) {
+        return new Builder<>(plg_, name_, new ArrayList<>());
+    }
+
+    /**
+     * 定期実行開始処理
+     * 全処理段の親スレッドを起動する(最終段以外もsubmitのタイムアウト判定に使用する)
+     * @param delay 初回実行までのディレイ(tick)
+     * @param period 2回目以降の実行インターバル(tick)
+     */
+    public void start(long delay, long period) {
+        for (PipelineStage s : stages) {
+            s.runTaskTimer(plg, delay, period);
+        }
+    }
+
+    /**
+     * 先頭段へのData投入
+     * 最終段の結果はbuildで指定した親スレッド側処理に渡される
+     * @param data_ ペイロードインスタンス
+     */
+    public void send(I data_) {
+        stages.get(0).sendData(data_);
+    }
+
+    /**
+     * 先頭段への処理依頼(応答通知付き)
+     * 最終段の結果は親スレッド側処理に渡す代わりに、返却したFutureを親スレッド(メインスレッド)で完了させる
+     * 途中の段で除外(nullを返却)された場合はCancellationException、例外発生時はその例外で完了する(子スレッドで完了)
+     * @param data_ ペイロードインスタンス
+     * @return 最終段の結果を受け取るFuture
+     */
+    public CompletableFuture<O> submit(I data_) {
+        return stages.get(0).submit(data_);
+    }
+
+    /**
+     * 先頭段への処理依頼(応答通知、タイムアウト付き)
+     * @param data_ ペイロードインスタンス
+     * @param timeout_ タイムアウト時間(0以下の場合はタイムアウトしない)
+     * @param unit_ タイムアウト時間の単位
+     * @return 最終段の結果を受け取るFuture
+     */
+    public CompletableFuture<O> submit(I data_, long timeout_, TimeUnit unit_) {
+        return stages.get(0).submit(data_, timeout_, unit_);
+    }
+
+    /**
+     * 全処理段の停止
+     * 残処理を行う場合はプラグイン停止時の一括停止(framework-shutdown-timeout)に任せること
+     */
+    public void cancel() {
+        for (PipelineStage s : stages) {
+            try {
+                s.cancel();
+            } catch (IllegalStateException ex) {
+                // タイマー未起動の場合(子スレッドへの停止指示は完了している)
+            }
+        }
+    }
+
+    /**
+     * 名前取得
+     * @return パイプライン名
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 処理段数取得
+     * @return 処理段数
+     */
+    public int getStageCount() {
+        return stages.size();
+    }
+
+    /**
+     * 処理段取得
+     * キュー滞留数や処理統計の参照に使用する
+     * @param index_ 処理段番号(0～getStageCount()-1)
+     * @return 処理段の親スレッドインスタンス
+     */
+    public AsyncProcessFrame getStage(int index_) {
+        return stages.get(index_);
+    }
+
+    /**
+     * 処理段定義
+     */
+    private static final class Spec {
+        private final String name;
+        private final Function<PayloadFrame, PayloadFrame> func;
+        private final Function<List<PayloadFrame>, List<PayloadFrame>> batchFunc;
+        private int workers = 0;
+        private int batchMax = 0;
+        private long batchWindow = 0;
+
+        /**
+         * コンストラクタ
+         * @param name_ 段名
+         * @param func_ 1件単位の加工処理
+         * @param batchFunc_ バッチ単位の加工処理
+         */
+        private Spec(String name_, Function<PayloadFrame, PayloadFrame> func_, Function<List<PayloadFrame>, List<PayloadFrame>> batchFunc_) {
+            name = name_;
+            func = func_;
+            batchFunc = batchFunc_;
+        }
+    }
+
+    /**
+     * パイプラインビルダー
+     * stage/batchStageで処理段を追加し、workers/batchは直前に追加した処理段に適用する
+     * @param <I> 先頭段への入力ペイロード型
+     * @param <T> 直前に追加した処理段の出力ペイロード型
+     */
+    public static final class Builder<I extends PayloadFrame, T extends PayloadFrame> {
+        private final PluginFrame plg;
+        private final String name;
+        private final List<Spec> specs;
+
+        /**
+         * コンストラクタ
+         * @param plg_ プラグインフレームインスタンス
+         * @param name_ 名前
+         * @param specs_ 処理段定義
+         */
+        private Builder(PluginFrame plg_, String name_, List<Spec> specs_) {
+            plg = plg_;
+            name = name_;
+            specs = specs_;
+        }
+
+        /**
+         * 処理段の追加(1件単位)
+         * 加工処理は子スレッドで呼び出される nullを返却した場合は以降の段へ渡さない
+         * @param <R> 出力ペイロード型
+         * @param name_ 段名
+         * @param func_ 加工処理
+         * @return ビルダー
+         */
+        @SuppressWarnings("unchecked")
+        public <R extends PayloadFrame> Builder<I, R> stage(String name_, Function<? super T, ? extends R> func_) {
+            specs.add(new Spec(name_, (Function<PayloadFrame, PayloadFrame>) (Function<?, ?>) func_, null));
+            return new Builder<>(plg, name, specs);
+        }
+
+        /**
+         * 処理段の追加(バッチ単位)
+         * 1つのトランザクションにまとめる場合などに使用し、batchで件数を指定する(未指定時はframework-batch-max)
+         * 返却リストに含まれない入力は以降の段へ渡さない
+         * @param <R> 出力ペイロード型
+         * @param name_ 段名
+         * @param func_ 加工処理
+         * @return ビルダー
+         */
+        @SuppressWarnings("unchecked")
+        public <R extends PayloadFrame> Builder<I, R> batchStage(String name_, Function<List<T>, List<R>> func_) {
+            specs.add(new Spec(name_, null, (Function<List<PayloadFrame>, List<PayloadFrame>>) (Function<?, ?>) func_));
+            return new Builder<>(plg, name, specs);
+        }
+
+        /**
+         * 直前の処理段の子スレッド数指定
+         * 未指定の場合はframework-workers設定値
+         * @param workers_ 子スレッド数
+         * @return ビルダー
+         */
+        public Builder<I, T> workers(int workers_) {
+            last().workers = workers_;
+            return this;
+        }
+
+        /**
+         * 直前の処理段のバッチ処理指定
+         * 未指定の場合はframework-batch-max、framework-batch-window設定値
+         * @param max_ 1回にまとめて処理する最大件数
+         * @param window_ 最大件数に満たない場合に後続Dataの到着を待つ最大時間(ミリ秒)
+         * @return ビルダー
+         */
+        public Builder<I, T> batch(int max_, long window_) {
+            Spec s = last();
+            s.batchMax = Math.max(1, max_);
+            s.batchWindow = window_;
+            return this;
+        }
+
+        /**
+         * 直前の処理段定義取得
+         * @return 処理段定義
+         */
+        private Spec last() {
+            if (specs.isEmpty()) {
+                throw new IllegalStateException("no stage defined for pipeline [" + name + "]");
+            }
+            return specs.get(specs.size() - 1);
+        }
+
+        /**
+         * パイプラインの生成
+         * 各処理段の子スレッドは生成時に起動するため、親スレッドはstartで起動すること
+         * @param sink_ 最終段の結果を受け取る親スレッド(メインスレッド)側処理(不要な場合はnull)
+         * @return パイプライン
+         */
+        @SuppressWarnings("unchecked")
+        public AsyncPipeline<I, T> build(Consumer<? super T> sink_) {
+            if (specs.isEmpty()) {
+                throw new IllegalStateException("no stage defined for pipeline [" + name + "]");
+            }
+            List<PipelineStage> stages = new ArrayList<>(specs.size());
+            for (Spec s : specs) {
+                String n = name + "-" + s.name;
+                PipelineStage f = (s.workers > 0) ? new PipelineStage(plg, n, s.workers) : new PipelineStage(plg, n);
+                if (s.batchMax > 0) {
+                    f.setBatch(s.batchMax, s.batchWindow);
+                }
+                stages.add(f);
+            }
+            // 子スレッドは起動済みだがData投入前のため、ここで接続する
+            for (int i = 0; i < stages.size(); i++) {
+                Spec s = specs.get(i);
+                PipelineStage up = (i > 0) ? stages.get(i - 1) : null;
+                PipelineStage next = (i < stages.size() - 1) ? stages.get(i + 1) : null;
+                Consumer<PayloadFrame> sink = (next == null) ? (Consumer<PayloadFrame>) (Consumer<?>) sink_ : null;
+                stages.get(i).link(s.func, s.batchFunc, up, next, sink);
+            }
+            return new AsyncPipeline<>(plg, name, stages);
+        }
+    }
+}
@@ -1,12 +1,23 @@
 
 package jp.minecraftuser.ecoframework.async;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import jp.minecraftuser.ecoframework.ConfigFrame;
 import jp.minecraftuser.ecoframework.PluginFrame;
 import org.bukkit.Server;
-import org.bukkit.entity.Player;
 
 /**
  * 非同期Data加工フレーム
@@ -14,33 +25,113 @@ import org.bukkit.entity.Player;
  */
 public abstract class AsyncProcessFrame extends AsyncFrame {
     private Long count;
+    private DrainBudget budget;
     private Long sleep;
+    private Long idle;
+    private boolean signal = false;
+    private volatile int batchMax = 1;
+    private volatile long batchWindow = 0;
+    private int retryMax = 0;
+    private long retryBackoff = 1000;
+    private int deadLetterMax = 1000;
     private Server server;
-    protected ConcurrentLinkedQueue<PayloadFrame> queue = new ConcurrentLinkedQueue<>();
+    private final PayloadQueue<PayloadFrame> payloads = new PayloadQueue<>();
+    protected ConcurrentLinkedQueue<PayloadFrame> queue = payloads;
+    // タイムアウト指定付きでsubmitされた応答待ちData(親スレッドインスタンスのみ使用)
+    private final ConcurrentLinkedQueue<PayloadFrame> timed = new ConcurrentLinkedQueue<>();
+    // 子スレッドで失敗したDataの応答通知先(親スレッドインスタンスのみ使用)
+    private final ConcurrentLinkedQueue<Failure> failures = new ConcurrentLinkedQueue<>();
+    // 子スレッドで処理中のData(バッチ処理時はnull)
+    private PayloadFrame current = null;
+    // 親スレッド側処理後に返却する再利用プール(親スレッドインスタンスのみ使用)
+    private volatile PayloadPool<?> pool = null;
+    // 処理に失敗したData(親スレッドインスタンスのみ使用)
+    private final ConcurrentLinkedQueue<DeadLetter> deadLetters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger deadLetterCount = new AtomicInteger();
+    private final AtomicLong deadLetterDropped = new AtomicLong();
+    // 残処理中に拒否したData数(親スレッドインスタンスのみ使用)
+    private final AtomicLong drainRejected = new AtomicLong();
+    // 処理開始時刻指定付きのData(子スレッドインスタンスのみ使用)
+    private final DelayQueue<Scheduled> delayed = new DelayQueue<>();
+
+    /**
+     * 異常完了待ちの応答通知先
+     */
+    private static final class Failure {
+        private final CompletableFuture<Object> future;
+        private final Throwable cause;
+
+        /**
+         * コンストラクタ
+         * @param future_ 応答通知先
+         * @param cause_ 例外
+         */
+        private Failure(CompletableFuture<Object> future_, Throwable cause_) {
+            future = future_;
+            cause = cause_;
+        }
+    }
+
+    /**
+     * 処理開始時刻指定付きData
+     */
+    private static final class Scheduled implements Delayed {
+        private final PayloadFrame data;
+        private final long due;
+
+        /**
+         * コンストラクタ
+         * @param data_ ペイロードインスタンス
+         * @param due_ 処理開始可能時刻(System.nanoTime基準)
+         */
+        private Scheduled(PayloadFrame data_, long due_) {
+            data = data_;
+            due = due_;
+        }
+
+        /**
+         * 処理開始までの残り時間取得
+         * @param unit 時間単位
+         * @return 残り時間(0以下の場合は処理開始可能)
+         */
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(due - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * 処理開始時刻の比較
+         * @param o 比較対象
+         * @return 比較結果
+         */
+        @Override
+        public int compareTo(Delayed o) {
+            if (o instanceof Scheduled) {
+                return Long.signum(due - ((Scheduled) o).due);
+            }
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), o.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
     /**
      * 親スレッド用コンストラクタ
      * @param plg_ プラグインフレームインスタンス
      * @param name_ 名前
      */
     public AsyncProcessFrame(PluginFrame plg_, String name_) {
-        super(plg_, name_);
-
-        // 呼び出し回数を削減するためサーバーインスタンスを確保しておく
-        server = plg.getServer();
-        Player player;
-        // framework-sending-max設定値があれば使用する
-        conf.registerLong("framework-sending-max", true);
-        count = conf.getLong("framework-sending-max");
-        // 無ければ1回あたり50回送信のみ対応
-        if (count == null) count = 50L;
-        log.info("framework-sending-max:"+count);
+        super(plg_, name_, loadWorkers(plg_));
+        loadConfig();
+    }
 
-        // framework-receive-interval設定値があれば使用する
-        conf.registerLong("framework-receive-interval", true);
-        sleep = conf.getLong("framework-receive-interval");
-        // 無ければ1回あたり1ミリ秒Sleepする
-        if (sleep == null) sleep = 1L;
-        log.info("framework-receive-interval:"+sleep);
+    /**
+     * 親スレッド用コンストラクタ(子スレッド数指定)
+     * 子スレッドが複数の場合、sendDataはペイロードの振り分けキー単位で子スレッドに振り分ける
+     * @param plg_ プラグインフレームインスタンス
+     * @param name_ 名前
+     * @param workers_ 子スレッド数
+     */
+    public AsyncProcessFrame(PluginFrame plg_, String name_, int workers_) {
+        super(plg_, name_, workers_);
+        loadConfig();
     }
 
     /**
@@ -51,9 +142,32 @@ public abstract class AsyncProcessFrame extends AsyncFrame {
      */
     public AsyncProcessFrame(PluginFrame plg_, String name_, AsyncFrame frame_) {
         super(plg_, name_, frame_);
+        loadConfig();
+    }
+
+    /**
+     * 子スレッド数設定読み込み処理
+     * 親クラスのコンストラクタに渡すためstaticとする
+     * @param plg_ プラグインフレームインスタンス
+     * @return 子スレッド数
+     */
+    private static int loadWorkers(PluginFrame plg_) {
+        // framework-workers設定値があれば使用する
+        ConfigFrame c = plg_.getDefaultConfig();
+        c.registerLong("framework-workers", true);
+        Long n = c.getLong("framework-workers");
+        // 無ければ子スレッドは1つのみ(従来動作)
+        if ((n == null) || (n < 1)) return 1;
+        return n.intValue();
+    }
+
+    /**
+     * 設定値読み込み処理
+     * 親スレッド用、子スレッド用の両インスタンスで共通
+     */
+    private void loadConfig() {
         // 呼び出し回数を削減するためサーバーインスタンスを確保しておく
         server = plg.getServer();
-        Player player;
         // framework-sending-max設定値があれば使用する
         conf.registerLong("framework-sending-max", true);
         count = conf.getLong("framework-sending-max");
@@ -61,12 +175,118 @@ public abstract class AsyncProcessFrame extends AsyncFrame {
         if (count == null) count = 50L;
         log.info("framework-sending-max:"+count);
 
+        // framework-sending-budget設定値があれば使用する
+        // 親スレッドの1回あたりの処理時間予算(マイクロ秒) 件数上限に達する前でも予算を使い切った時点で次回に持ち越す
+        conf.registerLong("framework-sending-budget", true);
+        Long us = conf.getLong("framework-sending-budget");
+        // framework-sending-adaptive設定値があれば使用する
+        // trueの場合はサーバーの遅延状況(tick間隔の実測値)に応じて予算を縮小する
+        conf.registerBoolean("framework-sending-adaptive", true);
+        Boolean adaptive = conf.getBoolean("framework-sending-adaptive");
+        // 無ければ件数上限のみで打ち切る(従来動作)
+        budget = new DrainBudget((us == null) ? 0 : us * 1000L, (adaptive != null) && adaptive);
+        if (budget.getBudget() > 0) log.info("framework-sending-budget:"+us+" adaptive:"+budget.isAdaptive());
+
         // framework-receive-interval設定値があれば使用する
         conf.registerLong("framework-receive-interval", true);
         sleep = conf.getLong("framework-receive-interval");
         // 無ければ1回あたり1ミリ秒Sleepする
         if (sleep == null) sleep = 1L;
         log.info("framework-receive-interval:"+sleep);
+
+        // framework-receive-mode設定値があれば使用する
+        // poll:一定間隔でキューを確認する(従来動作) signal:キューが空の間だけ待機し、データ追加で即時起床する
+        conf.registerString("framework-receive-mode", true);
+        String mode = conf.getString("framework-receive-mode");
+        signal = (mode != null) && mode.equalsIgnoreCase("signal");
+        log.info("framework-receive-mode:"+(signal ? "signal" : "poll"));
+
+        // framework-receive-idle設定値があれば使用する
+        // signalモードでキューが空の場合の最大待機時間(データ追加時は即時起床する)
+        conf.registerLong("framework-receive-idle", true);
+        idle = conf.getLong("framework-receive-idle");
+        // 無ければ1000ミリ秒で一旦起床する
+        if ((idle == null) || (idle <= 0)) idle = 1000L;
+        if (signal) log.info("framework-receive-idle:"+idle);
+
+        // framework-batch-max設定値があれば使用する
+        // 2以上の場合、子スレッドはキューから最大指定件数をまとめてexecuteProcessBatchに渡す
+        conf.registerLong("framework-batch-max", true);
+        Long max = conf.getLong("framework-batch-max");
+        // framework-batch-window設定値があれば使用する
+        // 指定件数に満たない場合に後続Dataの到着を待つ最大時間(ミリ秒) 0の場合は待たない
+        conf.registerLong("framework-batch-window", true);
+        Long window = conf.getLong("framework-batch-window");
+        // 無ければ1件ずつ処理する(従来動作)
+        setBatch((max == null) ? 1 : max.intValue(), (window == null) ? 0 : window);
+        if (batchMax > 1) log.info("framework-batch-max:"+batchMax+" framework-batch-window:"+batchWindow);
+
+        // framework-priority-weights設定値があれば使用する
+        // 優先度レーン(HIGH,NORMAL,BULK)の取り出し比率 親スレッド側、子スレッド側のキュー共通
+        conf.registerString("framework-priority-weights", true);
+        if (payloads.setWeights(conf.getString("framework-priority-weights"))) {
+            log.info("framework-priority-weights:"+conf.getString("framework-priority-weights"));
+        }
+
+        // framework-retry-max設定値があれば使用する
+        // executeProcessで例外が発生したDataの再試行回数 超過した場合はデッドレターキューに移す
+        conf.registerLong("framework-retry-max", true);
+        Long retry = conf.getLong("framework-retry-max");
+        // 無ければ再試行しない
+        retryMax = (retry == null) ? 0 : Math.max(0, retry.intValue());
+        // framework-retry-backoff設定値があれば使用する
+        // 初回の再試行までの時間(ミリ秒) 以降は再試行毎に倍にする
+        conf.registerLong("framework-retry-backoff", true);
+        Long backoff = conf.getLong("framework-retry-backoff");
+        // 無ければ1000ミリ秒
+        retryBackoff = (backoff == null) ? 1000L : Math.max(0, backoff);
+        if (retryMax > 0) log.info("framework-retry-max:"+retryMax+" framework-retry-backoff:"+retryBackoff);
+        // framework-deadletter-max設定値があれば使用する
+        // デッドレターキューの保持上限 超過した場合は古いものから破棄する
+        conf.registerLong("framework-deadletter-max", true);
+        Long dlq = conf.getLong("framework-deadletter-max");
+        // 無ければ1000件
+        deadLetterMax = (dlq == null) ? 1000 : Math.max(0, dlq.intValue());
+
+        // 子スレッド側キューのみ容量上限を設ける(親スレッド側キューは子スレッドの処理結果のため上限を設けない)
+        if (!parent) {
+            // framework-queue-capacity設定値があれば使用する
+            // 子スレッド1つあたりのキュー容量上限
+            conf.registerLong("framework-queue-capacity", true);
+            Long capacity = conf.getLong("framework-queue-capacity");
+            // framework-queue-policy設定値があれば使用する
+            // block/drop-oldest/drop-newest/coalesce/reject
+            conf.registerString("framework-queue-policy", true);
+            OverflowPolicy policy = OverflowPolicy.parse(conf.getString("framework-queue-policy"), OverflowPolicy.REJECT);
+            // framework-queue-block-timeout設定値があれば使用する
+            // blockの場合に追加元を待機させる最大時間(ミリ秒)
+            conf.registerLong("framework-queue-block-timeout", true);
+            Long timeout = conf.getLong("framework-queue-block-timeout");
+            // 無ければ上限なし(従来動作)
+            payloads.setLimit((capacity == null) ? 0 : capacity.intValue(), policy, (timeout == null) ? 1000L : timeout);
+            payloads.setRejectHandler(d -> {
+                abandon(d, new RejectedExecutionException("queue overflow"));
+                ((AsyncProcessFrame)parentFrame).onRejected(d);
+            });
+            payloads.setDiscardHandler(d -> abandon(d, new CancellationException("discarded by queue overflow policy")));
+            if (payloads.getCapacity() > 0) log.info("framework-queue-capacity:"+payloads.getCapacity()+" framework-queue-policy:"+policy);
+        }
+    }
+
+    /**
+     * バッチ処理設定
+     * 親スレッドインスタンスに設定した場合は子スレッドインスタンスにも反映する
+     * @param max 1回のexecuteProcessBatch呼び出しで渡す最大件数(1以下の場合はバッチ処理しない)
+     * @param window 最大件数に満たない場合に後続Dataの到着を待つ最大時間(ミリ秒)
+     */
+    public void setBatch(int max, long window) {
+        batchMax = (max < 1) ? 1 : max;
+        batchWindow = (window < 0) ? 0 : window;
+        if (parent && (childFrames != null)) {
+            for (AsyncFrame f : childFrames) {
+                ((AsyncProcessFrame)f).setBatch(max, window);
+            }
+        }
     }
 
     /**
@@ -75,16 +295,146 @@ public abstract class AsyncProcessFrame extends AsyncFrame {
      */
     @Override
     protected void parentRun() {
-        // 指定回数以内でキューが空になるまで処理する
+        // 指定回数以内かつ時間予算以内でキューが空になるまで処理する
         long cnt = count;
+        budget.begin(getTickPeriod());
         while (!queue.isEmpty()) {
             PayloadFrame data = queue.poll();
-            executeReceive(data);
+            receive(data);
             cnt--;
-            if (cnt <= 0) {
+            if ((cnt <= 0) || budget.expired()) {
                 break;
             }
         }
+        // 処理しきれなかった件数を記録する
+        budget.end(queue.isEmpty() ? 0 : queue.size());
+        // 子スレッドで失敗したDataの応答通知
+        completeFailures();
+        // 応答待ちのタイムアウト判定
+        expire();
+    }
+
+    /**
+     * 親スレッドでの1件分の受信処理
+     * submitで依頼されたDataは応答通知先を完了させ、それ以外はexecuteReceiveに渡す
+     * @param data_ ペイロードインスタンス
+     */
+    private void receive(PayloadFrame data_) {
+        getMetrics().recordDelivery(System.nanoTime() - data_.enqueued);
+        CompletableFuture<Object> f = data_.future;
+        if (f == null) {
+            executeReceive(data_);
+            // 再利用プール設定時は処理済みのDataを返却する
+            PayloadPool<?> p = pool;
+            if (p != null) {
+                p.release(data_);
+            }
+            return;
+        }
+        data_.future = null;
+        f.complete(data_);
+    }
+
+    /**
+     * 応答待ちDataのタイムアウト処理
+     * 完了済みのものは管理対象から外し、期限切れのものはTimeoutExceptionで完了させる
+     */
+    private void expire() {
+        if (timed.isEmpty()) {
+            return;
+        }
+        long now = System.nanoTime();
+        timed.removeIf(d -> {
+            CompletableFuture<Object> f = d.future;
+            if ((f == null) || f.isDone()) {
+                return true;
+            }
+            if (now - d.deadline >= 0) {
+                f.completeExceptionally(new TimeoutException("async process timeout"));
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * 子スレッドで失敗したDataの応答通知先を例外完了させる
+     */
+    private void completeFailures() {
+        Failure e;
+        while ((e = failures.poll()) != null) {
+            e.future.completeExceptionally(e.cause);
+        }
+    }
+
+    /**
+     * 応答通知先の異常完了依頼(子スレッド用)
+     * 応答通知先を切り離し、親スレッド(メインスレッド)の定期処理で例外完了させる
+     * @param data_ ペイロードインスタンス
+     * @param ex 例外
+     */
+    void abandonLater(PayloadFrame data_, Throwable ex) {
+        CompletableFuture<Object> f = data_.future;
+        if (f == null) {
+            return;
+        }
+        data_.future = null;
+        ((AsyncProcessFrame)parentFrame).failures.add(new Failure(f, ex));
+    }
+
+    /**
+     * 応答通知先の異常完了
+     * 呼び出し元のスレッドで完了させる
+     * @param data_ ペイロードインスタンス
+     * @param ex 例外
+     */
+    static void abandon(PayloadFrame data_, Throwable ex) {
+        CompletableFuture<Object> f = data_.future;
+        if (f != null) {
+            f.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * 処理不要判定
+     * submitで依頼されたDataの応答通知先がキャンセル、タイムアウト等で完了済みの場合は処理不要とする
+     * @param data_ ペイロードインスタンス
+     * @return 処理不要の場合true
+     */
+    private static boolean isAbandoned(PayloadFrame data_) {
+        CompletableFuture<Object> f = data_.future;
+        return (f != null) && f.isDone();
+    }
+
+    /**
+     * 再利用プール設定
+     * 設定した場合、executeReceive完了後のDataをプールに返却する(submitで依頼されたDataは返却しない)
+     * executeReceiveの後でDataの参照を保持する場合は設定しないこと
+     * @param pool_ 再利用プール(nullの場合は返却しない)
+     */
+    public void setPayloadPool(PayloadPool<?> pool_) {
+        if (!parent) {
+            ((AsyncProcessFrame)parentFrame).setPayloadPool(pool_);
+            return;
+        }
+        pool = pool_;
+    }
+
+    /**
+     * 再利用プール取得
+     * @return 再利用プール(未設定の場合null)
+     */
+    public PayloadPool<?> getPayloadPool() {
+        return parent ? pool : ((AsyncProcessFrame)parentFrame).getPayloadPool();
+    }
+
+    /**
+     * 親スレッド処理時間予算取得
+     * 1tickあたりの持ち越し件数等の統計を参照できる
+     * @return 時間予算管理インスタンス
+     */
+    public DrainBudget getDrainBudget() {
+        return parent ? budget : ((AsyncProcessFrame)parentFrame).getDrainBudget();
     }
 
     /**
@@ -97,15 +447,183 @@ public abstract class AsyncProcessFrame extends AsyncFrame {
         setPersist();
         
         // 停止指示があるまで処理する
-        while (true) {
-            synchronized (this) {
-                if (childend) break;
+        if (signal) {
+            signalLoop();
+        } else {
+            pollLoop();
+        }
+        // 残処理モードの場合は期限までキューの残りを処理する
+        drainBacklog();
+        finalizeProcess();
+    }
+
+    /**
+     * 共有ワーカープール対応判定
+     * @return childRunをオーバーライドしていない場合true
+     */
+    @Override
+    boolean isSliceable() {
+        return !isOverridden(AsyncProcessFrame.class, "childRun");
+    }
+
+    /**
+     * 共有ワーカープールでの処理開始時処理
+     */
+    @Override
+    void sliceBegin() {
+        // 親スレッド側は子スレッドが停止しても継続動作させる
+        setPersist();
+    }
+
+    /**
+     * 共有ワーカープールでの1回分の処理
+     * @param quantum_ 処理する最大件数
+     * @return 処理可能なDataが残っている場合true
+     */
+    @Override
+    boolean runSlice(int quantum_) {
+        for (int i = 0; i < quantum_; i++) {
+            if (childend) {
+                return true;
+            }
+            if (processDelayed()) {
+                continue;
+            }
+            PayloadFrame data = queue.poll();
+            if (data == null) {
+                return false;
             }
+            process(data);
+        }
+        return !queue.isEmpty();
+    }
+
+    /**
+     * 共有ワーカープールでの処理終了時処理
+     */
+    @Override
+    void sliceEnd() {
+        drainBacklog();
+        finalizeProcess();
+    }
+
+    /**
+     * 処理可能なData有無判定
+     * @return キューにDataがある、または処理開始時刻に達したDataがある場合true
+     */
+    @Override
+    boolean hasWork() {
+        if (!queue.isEmpty()) {
+            return true;
+        }
+        Scheduled d = delayed.peek();
+        return (d != null) && (d.getDelay(TimeUnit.NANOSECONDS) <= 0);
+    }
+
+    /**
+     * 子スレッド側の残処理
+     * 残処理モードでない場合は従来通り何もしない
+     */
+    private void drainBacklog() {
+        if (getState() != FrameState.DRAINING) {
+            return;
+        }
+        while (!isDrainExpired()) {
+            if (processDelayed()) {
+                continue;
+            }
+            PayloadFrame data = queue.poll();
+            if (data == null) {
+                // 処理開始時刻待ちのDataがある場合は期限まで待つ
+                if (!delayed.isEmpty()) {
+                    waitSignal(nextWait(10));
+                    continue;
+                }
+                // 上流のパイプライン段が残処理中の場合は転送を待つ
+                if (isUpstreamActive()) {
+                    waitSignal(10);
+                    continue;
+                }
+                break;
+            }
+            process(data);
+        }
+        int left = queue.size() + delayed.size();
+        if (left > 0) {
+            log.warning("子スレッドの残処理が期限内に完了しませんでした[未処理:" + left + "]");
+        }
+    }
+
+    /**
+     * 上流の処理段の稼働判定(パイプライン用)
+     * @return 自フレームへ転送する上流の処理段の子スレッドが終了していない場合true
+     */
+    boolean isUpstreamActive() {
+        return false;
+    }
+
+    /**
+     * 親スレッド側の残処理
+     * 期限まで親スレッド側キューの残りを処理する
+     * @param deadline_ 期限(System.nanoTime基準)
+     */
+    @Override
+    public void drainParent(long deadline_) {
+        if (!parent) {
+            ((AsyncProcessFrame)parentFrame).drainParent(deadline_);
+            return;
+        }
+        while (!queue.isEmpty() && (System.nanoTime() - deadline_ < 0)) {
+            receive(queue.poll());
+        }
+        completeFailures();
+    }
+
+    /**
+     * 残処理中の拒否件数取得
+     * @return 残処理中に受付を拒否したData数
+     */
+    @Override
+    public long getDrainRejectedCount() {
+        if (!parent) {
+            return parentFrame.getDrainRejectedCount();
+        }
+        return drainRejected.get();
+    }
+
+    /**
+     * 未処理件数取得
+     * @return 親スレッド、子スレッドのキューに残っている件数
+     */
+    @Override
+    public long getPendingCount() {
+        if (!parent) {
+            return parentFrame.getPendingCount();
+        }
+        long n = queue.size();
+        for (AsyncFrame f : childFrames) {
+            AsyncProcessFrame c = (AsyncProcessFrame)f;
+            n += c.queue.size() + c.delayed.size();
+        }
+        return n;
+    }
+
+    /**
+     * 子スレッド処理(pollモード)
+     * 1件処理する毎に指定時間Sleepする
+     */
+    private void pollLoop() {
+        while (true) {
+            if (childend) break;
 
+            // 処理開始時刻に達したDataを優先して処理する
+            if (processDelayed()) {
+                continue;
+            }
             // キューに値が存在する場合は延々と処理する(CPU負荷にならない程度のSleepを挟む)
             PayloadFrame data = queue.poll();
             if (data != null) {
-                    executeProcess(data);
+                    process(data);
             }
             // スレッドのSleep(ミリ秒)
             if (sleep != 0) {
@@ -116,7 +634,230 @@ public abstract class AsyncProcessFrame extends AsyncFrame {
                 }
             }
         }
-        finalizeProcess();
+    }
+
+    /**
+     * 子スレッド処理(signalモード)
+     * キューが空になるまでまとめて処理し、空の間だけ待機する
+     * 待機中はsendDataによるキュー追加で即時起床する
+     */
+    private void signalLoop() {
+        while (true) {
+            if (childend) break;
+
+            // 処理開始時刻に達したDataを優先して処理する
+            if (processDelayed()) {
+                continue;
+            }
+            // キューに値が存在する間は待機せずに連続して処理する
+            PayloadFrame data = queue.poll();
+            if (data != null) {
+                process(data);
+                continue;
+            }
+            // キューが空の場合は起床指示または次の処理開始時刻まで待機する
+            waitSignal(nextWait(idle));
+        }
+    }
+
+    /**
+     * 処理開始時刻に達したDataの処理
+     * 遅延投入されたDataはキュー容量の対象外とし、キューを経由せずに処理する
+     * @return 処理した場合true
+     */
+    private boolean processDelayed() {
+        Scheduled s = delayed.poll();
+        if (s == null) {
+            return false;
+        }
+        // 待ち時間の統計は処理開始可能時刻から計測する
+        s.data.enqueued = s.due;
+        process(s.data);
+        return true;
+    }
+
+    /**
+     * 待機時間算出
+     * @param max_ 最大待機時間(ミリ秒)
+     * @return 次の処理開始時刻までの時間と最大待機時間の短い方(ミリ秒)
+     */
+    private long nextWait(long max_) {
+        Scheduled s = delayed.peek();
+        if (s == null) {
+            return max_;
+        }
+        return Math.max(1L, Math.min(max_, s.getDelay(TimeUnit.MILLISECONDS)));
+    }
+
+    /**
+     * 子スレッドでの1回分のData処理
+     * バッチ処理有効時は後続Dataをまとめて取り出してexecuteProcessBatchに渡す
+     * @param data_ キューから取り出したペイロードインスタンス
+     */
+    private void process(PayloadFrame data_) {
+        // キャンセル、タイムアウト済みの依頼は処理しない
+        if (isAbandoned(data_)) {
+            return;
+        }
+        FrameMetrics m = getMetrics();
+        if (batchMax <= 1) {
+            long start = System.nanoTime();
+            m.recordWait(start - data_.enqueued);
+            current = data_;
+            try {
+                executeProcess(data_);
+            } catch (RuntimeException ex) {
+                // 1件の異常で子スレッドを停止させないよう、Data単位で再試行またはデッドレターキューに移す
+                m.recordError();
+                fail(data_, ex);
+            } finally {
+                current = null;
+                m.recordService(System.nanoTime() - start, 1);
+            }
+            return;
+        }
+        List<PayloadFrame> list = new ArrayList<>(batchMax);
+        m.recordWait(System.nanoTime() - data_.enqueued);
+        list.add(data_);
+        long deadline = System.nanoTime() + batchWindow * 1000000L;
+        while (list.size() < batchMax) {
+            PayloadFrame data = queue.poll();
+            if (data != null) {
+                if (!isAbandoned(data)) {
+                    m.recordWait(System.nanoTime() - data.enqueued);
+                    list.add(data);
+                }
+                continue;
+            }
+            // 時間窓の範囲内で後続Dataの到着を待つ(停止指示があれば打ち切る)
+            // 共有ワーカープールではスレッドを占有しないよう待たない
+            long remain = deadline - System.nanoTime();
+            if ((remain <= 0) || childend || isShared()) break;
+            waitSignal(Math.max(1L, remain / 1000000L));
+        }
+        long start = System.nanoTime();
+        try {
+            executeProcessBatch(list);
+        } catch (RuntimeException ex) {
+            // どのDataが原因か判別できないため、バッチ内の全Dataを失敗として扱う
+            m.recordError();
+            for (PayloadFrame data : list) {
+                fail(data, ex);
+            }
+        } finally {
+            m.recordService(System.nanoTime() - start, list.size());
+        }
+    }
+
+    /**
+     * Data処理失敗時処理
+     * 再試行上限以内であれば待機時間を倍にしながら同じ子スレッドで再処理し、超過した場合はデッドレターキューに移す
+     * submitで依頼されたDataの応答通知先は親スレッド(メインスレッド)で例外完了させる
+     * @param data_ ペイロードインスタンス
+     * @param ex 発生した例外
+     */
+    void fail(PayloadFrame data_, RuntimeException ex) {
+        int n = ++data_.attempts;
+        if ((n <= retryMax) && !isAbandoned(data_)) {
+            long wait = retryBackoff << Math.min(n - 1, 16);
+            log.log(Level.WARNING, "Data処理に失敗しました。" + wait + "ミリ秒後に再試行します[" + n + "/" + retryMax + "]", ex);
+            requeue(data_, wait, TimeUnit.MILLISECONDS);
+            return;
+        }
+        log.log(Level.SEVERE, "Data処理に失敗しました。デッドレターキューに移します[処理回数:" + n + "]", ex);
+        ((AsyncProcessFrame)parentFrame).addDeadLetter(new DeadLetter(data_, ex, n));
+        abandonLater(data_, ex);
+    }
+
+    /**
+     * デッドレターキューへの追加
+     * 保持上限を超過した場合は古いものから破棄する
+     * @param letter_ 処理に失敗したData
+     */
+    private void addDeadLetter(DeadLetter letter_) {
+        if (deadLetterMax <= 0) {
+            deadLetterDropped.incrementAndGet();
+            return;
+        }
+        deadLetters.add(letter_);
+        if (deadLetterCount.incrementAndGet() > deadLetterMax) {
+            if (deadLetters.poll() != null) {
+                deadLetterCount.decrementAndGet();
+                deadLetterDropped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * デッドレターキュー取得
+     * @return 処理に失敗したDataの一覧(古い順)
+     */
+    public List<DeadLetter> getDeadLetters() {
+        if (!parent) {
+            return ((AsyncProcessFrame)parentFrame).getDeadLetters();
+        }
+        return new ArrayList<>(deadLetters);
+    }
+
+    /**
+     * デッドレターキュー件数取得
+     * @return デッドレターキューに保持している件数
+     */
+    public int getDeadLetterCount() {
+        if (!parent) {
+            return ((AsyncProcessFrame)parentFrame).getDeadLetterCount();
+        }
+        return deadLetterCount.get();
+    }
+
+    /**
+     * デッドレターキュー破棄件数取得
+     * @return 保持上限の超過により破棄した件数の累計
+     */
+    public long getDeadLetterDropped() {
+        if (!parent) {
+            return ((AsyncProcessFrame)parentFrame).getDeadLetterDropped();
+        }
+        return deadLetterDropped.get();
+    }
+
+    /**
+     * デッドレターキューの再処理
+     * 保持している全てのDataの処理回数をリセットして子スレッドへ再投入する
+     * submitで依頼されたDataは例外で応答済みのため、再処理結果はexecuteReceiveに渡す
+     * @return 再投入した件数
+     */
+    public int replayDeadLetters() {
+        if (!parent) {
+            return ((AsyncProcessFrame)parentFrame).replayDeadLetters();
+        }
+        int n = 0;
+        DeadLetter d;
+        while ((d = deadLetters.poll()) != null) {
+            deadLetterCount.decrementAndGet();
+            PayloadFrame data = d.getPayload();
+            data.attempts = 0;
+            data.future = null;
+            sendData(data);
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * デッドレターキューの破棄
+     * @return 破棄した件数
+     */
+    public int clearDeadLetters() {
+        if (!parent) {
+            return ((AsyncProcessFrame)parentFrame).clearDeadLetters();
+        }
+        int n = 0;
+        while (deadLetters.poll() != null) {
+            deadLetterCount.decrementAndGet();
+            n++;
+        }
+        return n;
     }
 
     /**
@@ -126,7 +867,33 @@ public abstract class AsyncProcessFrame extends AsyncFrame {
      * @param msg メッセージペイロードインスタンス
      */
     private void addData(PayloadFrame data_) {
+        // 残処理モードでは新たな処理依頼を受け付けない
+        if (!parent && isDraining()) {
+            abandon(data_, new RejectedExecutionException("async frame is draining"));
+            ((AsyncProcessFrame)parentFrame).onRejected(data_);
+            return;
+        }
         queue.add(data_);
+        // 子スレッド側キューへの追加の場合は待機中の子スレッドを起こす
+        if (!parent) {
+            wakeup();
+        }
+    }
+
+    /**
+     * 他フレームの子スレッドからの直接転送(パイプライン用)
+     * メインスレッドを経由せずに子スレッド側キューへ追加する
+     * 上流から残処理として転送されるため、残処理中も受け付ける
+     * @param data_ ペイロードインスタンス
+     */
+    void transfer(PayloadFrame data_) {
+        if (!parent) {
+            ((AsyncProcessFrame)parentFrame).transfer(data_);
+            return;
+        }
+        AsyncProcessFrame f = (AsyncProcessFrame) selectChild(data_.getPartitionKey());
+        f.queue.add(data_);
+        f.wakeup();
     }
 
     /**
@@ -134,15 +901,174 @@ public abstract class AsyncProcessFrame extends AsyncFrame {
      * @param data_ ペイロードインスタンス
      */
     public void receiveData(PayloadFrame data_) {
+        // submitで依頼されたDataとは別のインスタンスで応答した場合は応答通知先を引き継ぐ
+        PayloadFrame req = current;
+        if ((req != null) && (req != data_) && (data_.future == null) && (req.future != null)) {
+            data_.future = req.future;
+            req.future = null;
+        }
         ((AsyncProcessFrame)parentFrame).addData(data_);
     }
 
     /**
      * 子スレッドのキューへのData追加処理
+     * 子スレッドが複数の場合はペイロードの振り分けキー(getPartitionKey)で振り分ける
      * @param data_ ペイロードインスタンス
      */
     public void sendData(PayloadFrame data_) {
-        ((AsyncProcessFrame)childFrame).addData(data_);
+        sendData(data_.getPartitionKey(), data_);
+    }
+
+    /**
+     * 子スレッドのキューへのData追加処理(振り分けキー指定)
+     * 同一キーのDataは同一の子スレッドで追加順に処理される
+     * @param key_ 振り分けキー(nullの場合は順番に振り分ける)
+     * @param data_ ペイロードインスタンス
+     */
+    public void sendData(Object key_, PayloadFrame data_) {
+        ((AsyncProcessFrame)selectChild(key_)).addData(data_);
+    }
+
+    /**
+     * 子スレッドのキューへの遅延Data追加処理
+     * 指定時間経過後に子スレッドで処理する(振り分けはsendDataと同様)
+     * 待機中も子スレッドは他のDataを処理できるため、外部要因の完了待ちや一時的なエラーの再試行に使用する
+     * @param data_ ペイロードインスタンス
+     * @param delay_ 処理開始までの時間
+     * @param unit_ 時間の単位
+     */
+    public void sendDataDelayed(PayloadFrame data_, long delay_, TimeUnit unit_) {
+        AsyncProcessFrame f = parent ? (AsyncProcessFrame)selectChild(data_.getPartitionKey()) : this;
+        // 残処理モードでは新たな処理依頼を受け付けない
+        if (isDraining()) {
+            abandon(data_, new RejectedExecutionException("async frame is draining"));
+            ((AsyncProcessFrame)f.parentFrame).onRejected(data_);
+            return;
+        }
+        f.schedule(data_, delay_, unit_);
+    }
+
+    /**
+     * 処理中Dataの再投入
+     * executeProcessから呼び出し、同じ子スレッドで指定時間経過後に再度処理させる
+     * submitで依頼されたDataの応答通知先は引き継ぐ(receiveDataを呼び出すまで完了しない)
+     * 残処理中も受け付け、残処理の期限まで処理する
+     * @param data_ ペイロードインスタンス
+     * @param delay_ 再処理までの時間
+     * @param unit_ 時間の単位
+     */
+    protected final void requeue(PayloadFrame data_, long delay_, TimeUnit unit_) {
+        if (parent) {
+            ((AsyncProcessFrame)selectChild(data_.getPartitionKey())).schedule(data_, delay_, unit_);
+            return;
+        }
+        schedule(data_, delay_, unit_);
+    }
+
+    /**
+     * 子スレッドインスタンスへの遅延Data登録
+     * @param data_ ペイロードインスタンス
+     * @param delay_ 処理開始までの時間
+     * @param unit_ 時間の単位
+     */
+    private void schedule(PayloadFrame data_, long delay_, TimeUnit unit_) {
+        delayed.add(new Scheduled(data_, System.nanoTime() + unit_.toNanos(Math.max(0, delay_))));
+        // 待機中の子スレッドに次の処理開始時刻を再計算させる
+        wakeup();
+    }
+
+    /**
+     * 子スレッド別遅延Data数取得
+     * @param worker_ 子スレッド番号(0～getWorkerCount()-1)
+     * @return 指定子スレッドで処理開始時刻待ちのData数
+     */
+    public int getDelayedCount(int worker_) {
+        if (!parent) {
+            return ((AsyncProcessFrame)parentFrame).getDelayedCount(worker_);
+        }
+        return ((AsyncProcessFrame)childFrames[worker_]).delayed.size();
+    }
+
+    /**
+     * 子スレッドへの処理依頼(応答通知付き)
+     * 子スレッドでreceiveDataされた応答は、executeReceiveを呼び出す代わりに返却したFutureを親スレッド(メインスレッド)で完了させる
+     * 子スレッドが依頼Data以外のインスタンスで応答する場合は、executeProcess内でreceiveDataを呼び出すこと(バッチ処理時は依頼Data自身で応答すること)
+     * 応答しない場合は完了しないため、必要に応じてタイムアウト指定版を使用すること
+     * @param <R> 応答ペイロード型
+     * @param data_ ペイロードインスタンス
+     * @return 応答ペイロードを受け取るFuture
+     */
+    public <R extends PayloadFrame> CompletableFuture<R> submit(PayloadFrame data_) {
+        return submit(data_, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 子スレッドへの処理依頼(応答通知、タイムアウト付き)
+     * 期限までに応答が無い場合はTimeoutExceptionで完了する(判定は親スレッドの定期処理で行う)
+     * 子スレッドでの処理に失敗した場合も親スレッドの定期処理で例外完了する
+     * Futureをcancelした場合、子スレッドで未処理であれば処理を行わない
+     * キュー容量超過で拒否、破棄された場合は追加元のスレッドで例外完了する
+     * @param <R> 応答ペイロード型
+     * @param data_ ペイロードインスタンス
+     * @param timeout_ タイムアウト時間(0以下の場合はタイムアウトしない)
+     * @param unit_ タイムアウト時間の単位
+     * @return 応答ペイロードを受け取るFuture
+     */
+    @SuppressWarnings("unchecked")
+    public <R extends PayloadFrame> CompletableFuture<R> submit(PayloadFrame data_, long timeout_, TimeUnit unit_) {
+        if (!parent) {
+            return ((AsyncProcessFrame)parentFrame).submit(data_, timeout_, unit_);
+        }
+        CompletableFuture<Object> f = new CompletableFuture<>();
+        data_.future = f;
+        if (timeout_ > 0) {
+            data_.deadline = System.nanoTime() + unit_.toNanos(timeout_);
+            timed.add(data_);
+        }
+        sendData(data_);
+        return (CompletableFuture<R>) (CompletableFuture<?>) f;
+    }
+
+    /**
+     * キュー滞留数取得
+     * @return 自インスタンスのキューに滞留しているData数
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * 子スレッド別キュー取得
+     * 容量上限や最大滞留数、破棄・拒否件数等の統計を参照できる
+     * @param worker_ 子スレッド番号(0～getWorkerCount()-1)
+     * @return 指定子スレッドのキュー
+     */
+    public PayloadQueue<PayloadFrame> getWorkerQueue(int worker_) {
+        if (!parent) {
+            return ((AsyncProcessFrame)parentFrame).getWorkerQueue(worker_);
+        }
+        return ((AsyncProcessFrame)childFrames[worker_]).payloads;
+    }
+
+    /**
+     * 親スレッド側キュー取得
+     * 子スレッドからの処理結果の優先度レーン別滞留数、待ち時間等の統計を参照できる
+     * @return 親スレッド側キュー
+     */
+    public PayloadQueue<PayloadFrame> getReceiveQueue() {
+        return parent ? payloads : ((AsyncProcessFrame)parentFrame).payloads;
+    }
+
+    /**
+     * 子スレッド別キュー滞留数取得
+     * @param worker_ 子スレッド番号(0～getWorkerCount()-1)
+     * @return 指定子スレッドのキューに滞留しているData数
+     */
+    public int getQueueDepth(int worker_) {
+        if (!parent) {
+            return ((AsyncProcessFrame)parentFrame).getQueueDepth(worker_);
+        }
+        return ((AsyncProcessFrame)childFrames[worker_]).getQueueDepth();
     }
 
     /**
@@ -151,6 +1077,43 @@ public abstract class AsyncProcessFrame extends AsyncFrame {
      */
     protected abstract void executeProcess(PayloadFrame data_);
 
+    /**
+     * Data加工子スレッド側処理(バッチ)
+     * framework-batch-max または setBatch で2以上を指定した場合に呼び出される
+     * 1つのトランザクションやファイル書き込みにまとめたい場合はオーバーライドすること
+     * デフォルトでは1件ずつexecuteProcessを呼び出す
+     * @param list ペイロードインスタンスのリスト(キューから取り出した順)
+     */
+    protected void executeProcessBatch(List<PayloadFrame> list) {
+        for (PayloadFrame data : list) {
+            executeProcess(data);
+        }
+    }
+
+    /**
+     * 子スレッド側キューの容量超過、または残処理中による拒否時処理
+     * 親スレッドインスタンスに対して、sendDataを呼び出したスレッドで呼び出される
+     * 拒否したDataの再送や呼び出し元への通知が必要な場合はオーバーライドすること
+     * @param data_ 拒否したペイロードインスタンス
+     */
+    protected void onRejected(PayloadFrame data_) {
+        // 大量に拒否した場合にログが溢れないよう間引いて出力する
+        if (isDraining()) {
+            long n = drainRejected.incrementAndGet();
+            if (n % 1000 == 1) {
+                log.warning("残処理中のためDataを拒否しました[累計:" + n + "]");
+            }
+            return;
+        }
+        long n = 0;
+        for (int i = 0; i < getWorkerCount(); i++) {
+            n += getWorkerQueue(i).getRejectedCount();
+        }
+        if (n % 1000 == 1) {
+            log.warning("キュー容量超過のためDataを拒否しました[累計:" + n + "]");
+        }
+    }
+
     /**
      * 子スレッド終了時処理
      */
@@ -0,0 +1,202 @@
+
+package jp.minecraftuser.ecoframework.async;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 非同期フレーム共有ワーカープール
+ * framework-executor: shared を指定したフレームの子スレッドインスタンスを、CPUコア数に応じた少数のスレッドで実行する
+ * 処理待ちのフレームを到着順に並べ、1回あたり一定件数ずつ処理して末尾に戻すことでフレーム間の公平性を保つ
+ * プラグイン数、フレーム数が増えてもスレッド数は増えない
+ * @author ecolight
+ */
+public final class AsyncWorkerPool {
+    // 1回の割り当てで処理する最大件数
+    private static final int QUANTUM = 64;
+    // 処理開始時刻待ちのDataを確認する間隔(ミリ秒)
+    private static final long SCAN_INTERVAL = 10;
+    private static final Object LOCK = new Object();
+    private static int configured = 0;
+    private static AsyncWorkerPool shared = null;
+
+    private final LinkedBlockingQueue<AsyncFrame> ready = new LinkedBlockingQueue<>();
+    private final Set<AsyncFrame> frames = ConcurrentHashMap.newKeySet();
+    private final Thread[] threads;
+    private final AtomicLong lastScan = new AtomicLong(System.nanoTime());
+    private final AtomicLong slices = new AtomicLong();
+    private volatile boolean stopped = false;
+
+    /**
+     * コンストラクタ
+     * @param size_ スレッド数
+     */
+    private AsyncWorkerPool(int size_) {
+        threads = new Thread[size_];
+        for (int i = 0; i < size_; i++) {
+            Thread t = new Thread(this::work, "EcoFramework-shared-worker-" + i);
+            t.setDaemon(true);
+            threads[i] = t;
+            t.start();
+        }
+    }
+
+    /**
+     * スレッド数設定
+     * 次回のプール生成時から有効(EcoFramework本体の起動時に設定する)
+     * @param size_ スレッド数(0以下の場合はCPUコア数から決定する)
+     */
+    public static void configure(int size_) {
+        synchronized (LOCK) {
+            configured = size_;
+        }
+    }
+
+    /**
+     * 共有プール取得
+     * 初回呼び出し時にスレッドを起動する
+     * @return 共有プール
+     */
+    static AsyncWorkerPool get() {
+        synchronized (LOCK) {
+            if (shared == null) {
+                int n = configured;
+                if (n <= 0) {
+                    n = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+                }
+                shared = new AsyncWorkerPool(n);
+            }
+            return shared;
+        }
+    }
+
+    /**
+     * 起動済みの共有プール取得
+     * 統計表示用
+     * @return 共有プール(未起動の場合null)
+     */
+    public static AsyncWorkerPool getShared() {
+        synchronized (LOCK) {
+            return shared;
+        }
+    }
+
+    /**
+     * 共有プールの停止
+     * 全ての利用プラグインが停止した後(EcoFramework本体の停止時)に呼び出すこと
+     */
+    public static void shutdown() {
+        AsyncWorkerPool p;
+        synchronized (LOCK) {
+            p = shared;
+            shared = null;
+        }
+        if (p == null) {
+            return;
+        }
+        p.stopped = true;
+        for (Thread t : p.threads) {
+            t.interrupt();
+        }
+    }
+
+    /**
+     * 子スレッドインスタンスの登録
+     * @param frame_ 子スレッドインスタンス
+     */
+    void register(AsyncFrame frame_) {
+        frames.add(frame_);
+        signal(frame_);
+    }
+
+    /**
+     * 子スレッドインスタンスの登録解除
+     * @param frame_ 子スレッドインスタンス
+     */
+    void unregister(AsyncFrame frame_) {
+        frames.remove(frame_);
+    }
+
+    /**
+     * 処理待ちへの追加
+     * 処理待ち、または処理中のフレームは重複して追加しない(処理後に再確認する)
+     * @param frame_ 子スレッドインスタンス
+     */
+    void signal(AsyncFrame frame_) {
+        if (frame_.sliceQueued.compareAndSet(false, true)) {
+            ready.add(frame_);
+        }
+    }
+
+    /**
+     * ワーカースレッド処理
+     */
+    private void work() {
+        while (!stopped) {
+            AsyncFrame f;
+            try {
+                f = ready.poll(SCAN_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                continue;
+            }
+            if (f == null) {
+                scan();
+                continue;
+            }
+            slices.incrementAndGet();
+            f.runShared(QUANTUM);
+        }
+    }
+
+    /**
+     * 処理開始時刻に達したDataを持つフレームの確認
+     * 遅延投入されたDataは追加時以外に通知されないため、一定間隔で1スレッドのみ確認する
+     */
+    private void scan() {
+        long last = lastScan.get();
+        long now = System.nanoTime();
+        if ((now - last < TimeUnit.MILLISECONDS.toNanos(SCAN_INTERVAL)) || !lastScan.compareAndSet(last, now)) {
+            return;
+        }
+        for (AsyncFrame f : frames) {
+            if (f.isStopPending() || f.hasWork()) {
+                signal(f);
+            }
+        }
+    }
+
+    /**
+     * スレッド数取得
+     * @return ワーカースレッド数
+     */
+    public int getThreadCount() {
+        return threads.length;
+    }
+
+    /**
+     * 登録フレーム数取得
+     * @return 登録中の子スレッドインスタンス数
+     */
+    public int getFrameCount() {
+        return frames.size();
+    }
+
+    /**
+     * 処理待ちフレーム数取得
+     * @return 処理待ちの子スレッドインスタンス数
+     */
+    public int getReadyCount() {
+        return ready.size();
+    }
+
+    /**
+     * 割り当て回数取得
+     * @return フレームへの処理割り当て回数の累計
+     */
+    public long getSliceCount() {
+        return slices.get();
+    }
+}
@@ -0,0 +1,59 @@
+
+package jp.minecraftuser.ecoframework.async;
+
+/**
+ * 処理に失敗したData
+ * 再試行上限まで失敗したDataをAsyncProcessFrameのデッドレターキューに保持する
+ * @author ecolight
+ */
+public final class DeadLetter {
+    private final PayloadFrame data;
+    private final Throwable cause;
+    private final int attempts;
+    private final long time;
+
+    /**
+     * コンストラクタ
+     * @param data_ ペイロードインスタンス
+     * @param cause_ 最後に発生した例外
+     * @param attempts_ 処理回数
+     */
+    DeadLetter(PayloadFrame data_, Throwable cause_, int attempts_) {
+        data = data_;
+        cause = cause_;
+        attempts = attempts_;
+        time = System.currentTimeMillis();
+    }
+
+    /**
+     * ペイロード取得
+     * @return 処理に失敗したペイロードインスタンス
+     */
+    public PayloadFrame getPayload() {
+        return data;
+    }
+
+    /**
+     * 例外取得
+     * @return 最後に発生した例外
+     */
+    public Throwable getCause() {
+        return cause;
+    }
+
+    /**
+     * 処理回数取得
+     * @return 再試行を含めた処理回数
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * 登録時刻取得
+     * @return デッドレターキューへの登録時刻(エポックミリ秒)
+     */
+    public long getTime() {
+        return time;
+    }
+}
@@ -0,0 +1,137 @@
+
+package jp.minecraftuser.ecoframework.async;
+
+/**
+ * 親スレッド(メインスレッド)側キュー処理の時間予算管理クラス
+ * 1tick当たりの処理を件数だけでなく経過時間でも打ち切るために使用する
+ * 適応モードではtick間隔の実測値からサーバーの遅延を推定し、遅延している間は予算を縮小する
+ * (BukkitAPIではtick間隔は50ms未満にならないため、MSPTが50ms未満の状態は区別できない)
+ * 本クラスはメインスレッドからのみ操作すること(参照系メソッドは任意のスレッドから呼び出し可)
+ * @author ecolight
+ */
+public final class DrainBudget {
+    // 1tickあたりのナノ秒
+    private static final long TICK_NANOS = 50000000L;
+    // 適応モードで縮小する下限(基準予算に対する割合)
+    private static final double MIN_RATIO = 0.1;
+    // tick間隔の平滑化係数
+    private static final double ALPHA = 0.2;
+
+    private final long budget;
+    private final boolean adaptive;
+    private long last = 0;
+    private long deadline = 0;
+    private double interval = 0;
+    private volatile long current;
+    private volatile double mspt = 50.0;
+    private volatile long lastDeferred = 0;
+    private volatile long deferredTicks = 0;
+
+    /**
+     * コンストラクタ
+     * @param budget_ 1回あたりの処理時間予算(ナノ秒) 0以下の場合は時間による打ち切りをしない
+     * @param adaptive_ 適応モード
+     */
+    public DrainBudget(long budget_, boolean adaptive_) {
+        budget = Math.max(0, budget_);
+        adaptive = adaptive_;
+        current = budget;
+    }
+
+    /**
+     * 処理開始
+     * 親スレッドの定期処理の先頭で呼び出す
+     * @param period_ 定期処理の呼び出し間隔(tick) 不明な場合は0
+     */
+    public void begin(long period_) {
+        long now = System.nanoTime();
+        if (budget == 0) {
+            last = now;
+            return;
+        }
+        long b = budget;
+        if (adaptive && (last != 0) && (period_ > 0)) {
+            // 呼び出し間隔を平滑化し、1tickあたりの実時間(MSPT相当)を推定する
+            double sample = (double) (now - last);
+            interval = (interval == 0) ? sample : (interval + ALPHA * (sample - interval));
+            double expected = (double) (period_ * TICK_NANOS);
+            mspt = interval / period_ / 1000000.0;
+            // 想定より間隔が伸びている(サーバーが遅延している)場合は予算を縮小する
+            if (interval > expected) {
+                b = (long) Math.max(budget * MIN_RATIO, budget * expected / interval);
+            }
+        }
+        last = now;
+        current = b;
+        deadline = now + b;
+    }
+
+    /**
+     * 予算超過判定
+     * 1件処理する毎に呼び出し、trueの場合は処理を打ち切る
+     * @return 予算超過の場合true
+     */
+    public boolean expired() {
+        return (budget != 0) && (System.nanoTime() - deadline >= 0);
+    }
+
+    /**
+     * 処理終了
+     * 親スレッドの定期処理の末尾で呼び出す
+     * @param deferred_ 次回に持ち越した件数
+     */
+    public void end(long deferred_) {
+        lastDeferred = deferred_;
+        if (deferred_ > 0) {
+            deferredTicks++;
+        }
+    }
+
+    /**
+     * 基準予算取得
+     * @return 1回あたりの基準処理時間予算(ナノ秒) 0の場合は時間による打ち切り無し
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * 適用中予算取得
+     * @return 直近の処理で適用した処理時間予算(ナノ秒)
+     */
+    public long getCurrentBudget() {
+        return current;
+    }
+
+    /**
+     * 適応モード判定
+     * @return 適応モードの場合true
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * 推定MSPT取得
+     * @return 適応モードで推定した1tickあたりの実時間(ミリ秒)
+     */
+    public double getEstimatedMspt() {
+        return mspt;
+    }
+
+    /**
+     * 直近の持ち越し件数取得
+     * @return 直近の処理で次回に持ち越した件数
+     */
+    public long getLastDeferred() {
+        return lastDeferred;
+    }
+
+    /**
+     * 持ち越し発生回数取得
+     * @return 持ち越しが発生した処理回数の累計
+     */
+    public long getDeferredTicks() {
+        return deferredTicks;
+    }
+}
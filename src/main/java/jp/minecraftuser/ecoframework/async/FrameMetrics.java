@@ -0,0 +1,167 @@
+
+package jp.minecraftuser.ecoframework.async;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 非同期フレームの処理統計
+ * 親スレッドインスタンス単位で保持し、全ての子スレッドから記録する
+ * @author ecolight
+ */
+public final class FrameMetrics {
+    // 処理レートの集計間隔
+    private static final long WINDOW = TimeUnit.SECONDS.toNanos(10);
+
+    private final LatencyHistogram wait = new LatencyHistogram();
+    private final LatencyHistogram service = new LatencyHistogram();
+    private final LatencyHistogram lag = new LatencyHistogram();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final long created = System.nanoTime();
+    // 直近の集計区間の件数
+    private long windowStart = created;
+    private long windowProcessed = 0;
+    private long windowDelivered = 0;
+    private double processedRate = 0;
+    private double deliveredRate = 0;
+
+    /**
+     * 子スレッドでの処理開始記録
+     * @param waitNanos キュー追加から処理開始までの時間(ナノ秒)
+     */
+    public void recordWait(long waitNanos) {
+        wait.record(waitNanos);
+    }
+
+    /**
+     * 子スレッドでの処理完了記録
+     * @param serviceNanos 処理時間(ナノ秒)
+     * @param count_ 処理件数(バッチ処理の場合はバッチの件数)
+     */
+    public void recordService(long serviceNanos, int count_) {
+        service.record(serviceNanos);
+        processed.addAndGet(count_);
+    }
+
+    /**
+     * 親スレッドでの受け渡し記録
+     * @param lagNanos 親スレッド側キュー追加から親スレッドでの処理までの時間(ナノ秒)
+     */
+    public void recordDelivery(long lagNanos) {
+        lag.record(lagNanos);
+        delivered.incrementAndGet();
+    }
+
+    /**
+     * 処理中の例外発生記録
+     */
+    public void recordError() {
+        errors.incrementAndGet();
+    }
+
+    /**
+     * 処理レートの集計
+     * 前回の集計から集計間隔以上経過している場合のみ再計算する
+     */
+    private synchronized void sample() {
+        long now = System.nanoTime();
+        long elapsed = now - windowStart;
+        if (elapsed < WINDOW) {
+            return;
+        }
+        long p = processed.get();
+        long d = delivered.get();
+        double sec = elapsed / 1000000000.0;
+        processedRate = (p - windowProcessed) / sec;
+        deliveredRate = (d - windowDelivered) / sec;
+        windowProcessed = p;
+        windowDelivered = d;
+        windowStart = now;
+    }
+
+    /**
+     * 待ち時間ヒストグラム取得
+     * @return キュー追加から子スレッドでの処理開始までの時間
+     */
+    public LatencyHistogram getWait() {
+        return wait;
+    }
+
+    /**
+     * 処理時間ヒストグラム取得
+     * @return 子スレッドでの処理時間(バッチ処理の場合はバッチ単位)
+     */
+    public LatencyHistogram getService() {
+        return service;
+    }
+
+    /**
+     * 受け渡し遅延ヒストグラム取得
+     * @return 親スレッド側キュー追加から親スレッド(メインスレッド)での処理までの時間
+     */
+    public LatencyHistogram getDeliveryLag() {
+        return lag;
+    }
+
+    /**
+     * 処理件数取得
+     * @return 子スレッドで処理した件数の累計
+     */
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * 受け渡し件数取得
+     * @return 親スレッドで処理した件数の累計
+     */
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    /**
+     * 例外発生件数取得
+     * @return 子スレッドでの処理中に例外が発生した件数の累計
+     */
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * 子スレッド処理レート取得
+     * @return 直近の集計間隔(10秒以上)での1秒あたりの処理件数
+     */
+    public synchronized double getProcessedRate() {
+        sample();
+        return processedRate;
+    }
+
+    /**
+     * 親スレッド処理レート取得
+     * @return 直近の集計間隔(10秒以上)での1秒あたりの受け渡し件数
+     */
+    public synchronized double getDeliveredRate() {
+        sample();
+        return deliveredRate;
+    }
+
+    /**
+     * 平均処理レート取得
+     * @return 生成から現在までの1秒あたりの処理件数
+     */
+    public double getAverageRate() {
+        double sec = (System.nanoTime() - created) / 1000000000.0;
+        return (sec <= 0) ? 0 : (processed.get() / sec);
+    }
+
+    /**
+     * 統計のリセット
+     */
+    public synchronized void reset() {
+        wait.reset();
+        service.reset();
+        lag.reset();
+    }
+}
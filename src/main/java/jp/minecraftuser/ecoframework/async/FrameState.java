@@ -0,0 +1,26 @@
+
+package jp.minecraftuser.ecoframework.async;
+
+/**
+ * 非同期フレームの状態
+ * STARTING → RUNNING → (DRAINING →) STOPPED の順に遷移する
+ * @author ecolight
+ */
+public enum FrameState {
+    /**
+     * 生成直後(子スレッド未起動)
+     */
+    STARTING,
+    /**
+     * 動作中
+     */
+    RUNNING,
+    /**
+     * 残処理中(新たな処理依頼は受け付けず、キューの残りのみ処理する)
+     */
+    DRAINING,
+    /**
+     * 停止
+     */
+    STOPPED
+}
@@ -0,0 +1,130 @@
+
+package jp.minecraftuser.ecoframework.async;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 処理時間ヒストグラム
+ * 2のべき乗毎の区間をさらに4分割した対数バケットで記録する(相対誤差25%以内)
+ * 記録はロックを使用せず、任意のスレッドから呼び出し可
+ * @author ecolight
+ */
+public final class LatencyHistogram {
+    // 1区間(2のべき乗)あたりの分割数(2bit)
+    private static final int SUB_BITS = 2;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = 64 * SUB_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 記録
+     * @param nanos 処理時間(ナノ秒)
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(index(nanos));
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long m;
+        while ((m = max.get()) < nanos) {
+            if (max.compareAndSet(m, nanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * バケット番号算出
+     * @param v 値
+     * @return バケット番号
+     */
+    private static int index(long v) {
+        if (v < SUB_COUNT) {
+            return (int) v;
+        }
+        int e = 63 - Long.numberOfLeadingZeros(v);
+        int sub = (int) (v >>> (e - SUB_BITS)) & (SUB_COUNT - 1);
+        return (e - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * バケット上限値算出
+     * @param i バケット番号
+     * @return バケットに含まれる値の上限(ナノ秒)
+     */
+    private static long upper(int i) {
+        if (i < SUB_COUNT) {
+            return i;
+        }
+        int e = i / SUB_COUNT + SUB_BITS - 1;
+        int sub = i % SUB_COUNT;
+        return ((long) (SUB_COUNT + sub + 1) << (e - SUB_BITS)) - 1;
+    }
+
+    /**
+     * 記録件数取得
+     * @return 記録件数
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * 平均値取得
+     * @return 平均値(ミリ秒)
+     */
+    public double getMean() {
+        long n = count.get();
+        return (n == 0) ? 0 : (total.get() / (double) n / 1000000.0);
+    }
+
+    /**
+     * 最大値取得
+     * @return 最大値(ミリ秒)
+     */
+    public double getMax() {
+        return max.get() / 1000000.0;
+    }
+
+    /**
+     * パーセンタイル値取得
+     * バケットの上限値で返却するため実際の値より最大25%程度大きくなる
+     * @param p パーセンタイル(0～100)
+     * @return パーセンタイル値(ミリ秒)
+     */
+    public double getPercentile(double p) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(n * p / 100.0));
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            sum += buckets.get(i);
+            if (sum >= target) {
+                return Math.min(upper(i), max.get()) / 1000000.0;
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * 記録のリセット
+     * 記録中のスレッドがある場合、リセット直後の値は厳密ではない
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+}
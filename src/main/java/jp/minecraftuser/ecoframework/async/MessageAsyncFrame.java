@@ -1,10 +1,19 @@
 
 package jp.minecraftuser.ecoframework.async;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jp.minecraftuser.ecoframework.PluginFrame;
+import jp.minecraftuser.ecoframework.Utl;
+import org.bukkit.ChatColor;
 import org.bukkit.Server;
 import org.bukkit.command.BlockCommandSender;
 import org.bukkit.command.CommandSender;
@@ -16,17 +25,49 @@ import org.bukkit.entity.Player;
  * @author ecolight
  */
 public abstract class MessageAsyncFrame extends AsyncFrame {
-    private ConcurrentLinkedQueue<MessagePayload> queue = new ConcurrentLinkedQueue<>();
+    // テンプレート毎のMessageFormatキャッシュ上限
+    private static final int FORMAT_CACHE_MAX = 256;
+    private final PayloadQueue<MessagePayload> queue = new PayloadQueue<>();
     private Long count;
+    private DrainBudget budget;
     private Long sleep;
+    private Long idle;
+    private boolean signal = false;
+    private boolean coalesce = false;
     private Server server;
+    // MessageFormatはスレッドセーフでないためインスタンス(スレッド)毎に保持する
+    private final HashMap<String, MessageFormat> formats = new HashMap<>();
+    // 送信後に返却する再利用プール(親スレッドインスタンスのみ使用)
+    private volatile PayloadPool<MessagePayload> pool = null;
+    // 集約送信で送信しきれなかった送信先毎のメッセージ(親スレッドインスタンスのみ使用)
+    private final LinkedHashMap<CommandSender, List<String>> pending = new LinkedHashMap<>();
+    // 残処理中に拒否したメッセージ数(親スレッドインスタンスのみ使用)
+    private final AtomicLong drainRejected = new AtomicLong();
     /**
      * コンストラクタ
      * @param plg_
      */
     public MessageAsyncFrame(PluginFrame plg_, String name_) {
         super(plg_, name_);
+        loadConfig();
+    }
+
+    /**
+     * 子スレッド用コンストラクタ
+     * @param plg_ プラグインフレームインスタンス
+     * @param name_ 名前
+     * @param frame_ 親スレッド用非同期処理フレームインスタンス
+     */
+    public MessageAsyncFrame(PluginFrame plg_, String name_, AsyncFrame frame_) {
+        super(plg_, name_, frame_);
+        loadConfig();
+    }
 
+    /**
+     * 設定値読み込み処理
+     * 親スレッド用、子スレッド用の両インスタンスで共通
+     */
+    private void loadConfig() {
         // 呼び出し回数を削減するためサーバーインスタンスを確保しておく
         server = plg.getServer();
 
@@ -37,12 +78,71 @@ public abstract class MessageAsyncFrame extends AsyncFrame {
         if (count == null) count = 50L;
         log.info("framework-message-sending-max:"+count);
 
+        // framework-message-sending-budget設定値があれば使用する
+        // 親スレッドの1回あたりの処理時間予算(マイクロ秒) 件数上限に達する前でも予算を使い切った時点で次回に持ち越す
+        conf.registerLong("framework-message-sending-budget", true);
+        Long us = conf.getLong("framework-message-sending-budget");
+        // framework-message-sending-adaptive設定値があれば使用する
+        // trueの場合はサーバーの遅延状況(tick間隔の実測値)に応じて予算を縮小する
+        conf.registerBoolean("framework-message-sending-adaptive", true);
+        Boolean adaptive = conf.getBoolean("framework-message-sending-adaptive");
+        // 無ければ件数上限のみで打ち切る(従来動作)
+        budget = new DrainBudget((us == null) ? 0 : us * 1000L, (adaptive != null) && adaptive);
+        if (budget.getBudget() > 0) log.info("framework-message-sending-budget:"+us+" adaptive:"+budget.isAdaptive());
+
         // message-receive-interval設定値があれば使用する
         conf.registerLong("framework-message-receive-interval", true);
         sleep = conf.getLong("framework-message-receive-interval");
         // 無ければ1回あたり1ミリ秒Sleepする
         if (sleep == null) sleep = 1L;
         log.info("framework-message-receive-interval:"+sleep);
+
+        // message-receive-mode設定値があれば使用する
+        // poll:一定間隔でキューを確認する(従来動作) signal:キューが空の間だけ待機し、メッセージ追加で即時起床する
+        conf.registerString("framework-message-receive-mode", true);
+        String mode = conf.getString("framework-message-receive-mode");
+        signal = (mode != null) && mode.equalsIgnoreCase("signal");
+        log.info("framework-message-receive-mode:"+(signal ? "signal" : "poll"));
+
+        // message-receive-idle設定値があれば使用する
+        conf.registerLong("framework-message-receive-idle", true);
+        idle = conf.getLong("framework-message-receive-idle");
+        // 無ければ1000ミリ秒で一旦起床する
+        if ((idle == null) || (idle <= 0)) idle = 1000L;
+        if (signal) log.info("framework-message-receive-idle:"+idle);
+
+        // framework-message-coalesce設定値があれば使用する
+        // trueの場合は1回の処理で送信するメッセージを送信先毎にまとめ、複数行の1メッセージとして送信する
+        conf.registerBoolean("framework-message-coalesce", true);
+        Boolean c = conf.getBoolean("framework-message-coalesce");
+        // 無ければ1件ずつ送信する(従来動作)
+        coalesce = (c != null) && c;
+        if (coalesce) log.info("framework-message-coalesce:"+coalesce);
+
+        // framework-message-priority-weights設定値があれば使用する
+        // 優先度レーン(HIGH,NORMAL,BULK)の取り出し比率 親スレッド側、子スレッド側のキュー共通
+        conf.registerString("framework-message-priority-weights", true);
+        if (queue.setWeights(conf.getString("framework-message-priority-weights"))) {
+            log.info("framework-message-priority-weights:"+conf.getString("framework-message-priority-weights"));
+        }
+
+        // 子スレッド側キューのみ容量上限を設ける
+        if (!parent) {
+            // framework-message-queue-capacity設定値があれば使用する
+            conf.registerLong("framework-message-queue-capacity", true);
+            Long capacity = conf.getLong("framework-message-queue-capacity");
+            // framework-message-queue-policy設定値があれば使用する
+            // block/drop-oldest/drop-newest/coalesce/reject
+            conf.registerString("framework-message-queue-policy", true);
+            OverflowPolicy policy = OverflowPolicy.parse(conf.getString("framework-message-queue-policy"), OverflowPolicy.DROP_OLDEST);
+            // framework-message-queue-block-timeout設定値があれば使用する
+            conf.registerLong("framework-message-queue-block-timeout", true);
+            Long timeout = conf.getLong("framework-message-queue-block-timeout");
+            // 無ければ上限なし(従来動作)
+            queue.setLimit((capacity == null) ? 0 : capacity.intValue(), policy, (timeout == null) ? 1000L : timeout);
+            queue.setRejectHandler(m -> ((MessageAsyncFrame)parentFrame).onRejected(m));
+            if (queue.getCapacity() > 0) log.info("framework-message-queue-capacity:"+queue.getCapacity()+" framework-message-queue-policy:"+policy);
+        }
     }
 
     /**
@@ -51,33 +151,193 @@ public abstract class MessageAsyncFrame extends AsyncFrame {
      */
     @Override
     protected void parentRun() {
-        // 指定回数以内でキューが空になるまで処理する
+        // 指定回数以内かつ時間予算以内でキューが空になるまで処理する
         long cnt = count;
+        budget.begin(getTickPeriod());
+        // 集約時は前回送信しきれなかった送信先から送信し、予算内に送信しきれなければ次回に持ち越す
+        if (coalesce && !flush()) {
+            budget.end(queue.size() + pending.size());
+            return;
+        }
         while (!queue.isEmpty()) {
             MessagePayload msg = queue.poll();
-            CommandSender target = msg.getTarget();
-            // 送信先がプレイヤーの場合
-            if (target instanceof Player) {
-                if (((Player) target).isOnline()) {
-                    target.sendMessage(msg.getMessage());
-                } else {
-                    // (仮)処理中に送信先プレイヤーがいなくなっている場合には何もしない
-                    // 送信保留し次回ログイン時に送信する等は検討してもいいかも
+            getMetrics().recordDelivery(System.nanoTime() - msg.enqueued);
+            // 子スレッドを経由せずに追加された未整形のメッセージはここで整形する
+            format(msg);
+            if (coalesce) {
+                // 送信先毎にまとめる(直前と同一のメッセージは1つにする)
+                List<String> lines = pending.get(msg.getTarget());
+                if (lines == null) {
+                    lines = new ArrayList<>();
+                    pending.put(msg.getTarget(), lines);
                 }
+                if (lines.isEmpty() || !lines.get(lines.size() - 1).equals(msg.getMessage())) {
+                    lines.add(msg.getMessage());
+                }
+            } else {
+                deliver(msg.getTarget(), msg.getMessage());
             }
-            // 送信先がコンソールの場合
-            else if (target instanceof ConsoleCommandSender) {
-                target.sendMessage(msg.getMessage());
-            }
-            // 送信先がブロックの場合
-            else if (target instanceof BlockCommandSender) {
-                target.sendMessage(msg.getMessage());
+            // 再利用プール設定時は送信済みのメッセージを返却する
+            PayloadPool<MessagePayload> p = pool;
+            if (p != null) {
+                p.release(msg);
             }
             cnt--;
-            if (cnt <= 0) {
+            if ((cnt <= 0) || budget.expired()) {
+                break;
+            }
+        }
+        if (coalesce) {
+            flush();
+        }
+        // 処理しきれなかった件数を記録する(集約時は送信しきれなかった送信先数を含む)
+        budget.end(queue.size() + pending.size());
+    }
+
+    /**
+     * 集約したメッセージの送信
+     * 送信先毎に送信し、時間予算を超過した場合は残りの送信先を次回に持ち越す
+     * @return 全ての送信先に送信した場合true
+     */
+    private boolean flush() {
+        Iterator<Map.Entry<CommandSender, List<String>>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<CommandSender, List<String>> e = it.next();
+            it.remove();
+            deliver(e.getKey(), join(e.getValue()));
+            if (budget.expired()) {
                 break;
             }
         }
+        return pending.isEmpty();
+    }
+
+    /**
+     * 複数行メッセージの結合
+     * 改行区切りの1メッセージにすることで1回の送信にまとめる
+     * 前の行の装飾を引き継がないよう2行目以降は装飾をリセットする
+     * @param lines メッセージのリスト
+     * @return 結合したメッセージ
+     */
+    private static String join(List<String> lines) {
+        if (lines.size() == 1) {
+            return lines.get(0);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            if (sb.length() > 0) {
+                sb.append('\n').append(ChatColor.RESET);
+            }
+            sb.append(line);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * メッセージ送信
+     * @param target 送信先
+     * @param message 送信メッセージ
+     */
+    private void deliver(CommandSender target, String message) {
+        // 送信先がプレイヤーの場合
+        if (target instanceof Player) {
+            if (((Player) target).isOnline()) {
+                target.sendMessage(message);
+            } else {
+                // (仮)処理中に送信先プレイヤーがいなくなっている場合には何もしない
+                // 送信保留し次回ログイン時に送信する等は検討してもいいかも
+            }
+        }
+        // 送信先がコンソールの場合
+        else if (target instanceof ConsoleCommandSender) {
+            target.sendMessage(message);
+        }
+        // 送信先がブロックの場合
+        else if (target instanceof BlockCommandSender) {
+            target.sendMessage(message);
+        }
+    }
+
+    /**
+     * メッセージ整形処理
+     * テンプレート指定のメッセージペイロードを色置換、MessageFormat、プリフィックス付与の順で整形する
+     * 通常は子スレッドで呼び出されるため、メインスレッドでの整形負荷を削減できる
+     * @param msg メッセージペイロードインスタンス
+     */
+    private void format(MessagePayload msg) {
+        if (msg.isFormatted()) {
+            return;
+        }
+        String str = msg.getTemplate();
+        if (msg.isColor()) {
+            str = Utl.repColor(str);
+        }
+        String[] args = msg.getArgs();
+        if ((args != null) && (args.length > 0)) {
+            MessageFormat mf = formats.get(str);
+            if (mf == null) {
+                // テンプレートが動的に生成される場合に肥大化しないよう上限で破棄する
+                if (formats.size() >= FORMAT_CACHE_MAX) {
+                    formats.clear();
+                }
+                mf = new MessageFormat(str);
+                formats.put(str, mf);
+            }
+            str = mf.format(args);
+        }
+        if (msg.isPrefix()) {
+            str = Utl.formatPluginMessage(plg, msg.getTarget(), str);
+        }
+        msg.setFormatted(str);
+    }
+
+    /**
+     * 親スレッド処理時間予算取得
+     * 1tickあたりの持ち越し件数等の統計を参照できる
+     * @return 時間予算管理インスタンス
+     */
+    public DrainBudget getDrainBudget() {
+        return parent ? budget : ((MessageAsyncFrame)parentFrame).getDrainBudget();
+    }
+
+    /**
+     * 再利用プール設定
+     * 設定した場合、送信後のメッセージペイロードをプールに返却する
+     * メッセージペイロードはacquireで取得し、setMessageまたはsetTemplateで内容を設定してsendMessageすること
+     * @param pool_ 再利用プール(nullの場合は返却しない)
+     */
+    public void setPayloadPool(PayloadPool<MessagePayload> pool_) {
+        if (!parent) {
+            ((MessageAsyncFrame)parentFrame).setPayloadPool(pool_);
+            return;
+        }
+        pool = pool_;
+    }
+
+    /**
+     * 再利用プール取得
+     * @return 再利用プール(未設定の場合null)
+     */
+    public PayloadPool<MessagePayload> getPayloadPool() {
+        return parent ? pool : ((MessageAsyncFrame)parentFrame).getPayloadPool();
+    }
+
+    /**
+     * 子スレッド側キュー取得
+     * 容量上限や最大滞留数、破棄・拒否件数等の統計を参照できる
+     * @return 子スレッド側キュー
+     */
+    public PayloadQueue<MessagePayload> getWorkerQueue() {
+        return parent ? ((MessageAsyncFrame)childFrame).queue : queue;
+    }
+
+    /**
+     * 親スレッド側キュー取得
+     * 送信待ちメッセージの優先度レーン別滞留数、待ち時間等の統計を参照できる
+     * @return 親スレッド側キュー
+     */
+    public PayloadQueue<MessagePayload> getReceiveQueue() {
+        return parent ? queue : ((MessageAsyncFrame)parentFrame).queue;
     }
 
     /**
@@ -91,14 +351,19 @@ public abstract class MessageAsyncFrame extends AsyncFrame {
         
         // 停止指示があるまで処理する
         while (true) {
-            synchronized (this) {
-                if (childend) break;
-            }
+            if (childend) break;
 
             // キューに値が存在する場合は延々と処理する(CPU負荷にならない程度のSleepを挟む)
             MessagePayload msg = queue.poll();
             if (msg != null) {
-                    executeProcess(msg);
+                    process(msg);
+                    // signalモードではキューが空になるまで待機せずに処理する
+                    if (signal) continue;
+            }
+            // signalモードでは起床指示があるまで待機する
+            if (signal) {
+                waitSignal(idle);
+                continue;
             }
             // スレッドのSleep(ミリ秒)
             try {
@@ -107,6 +372,142 @@ public abstract class MessageAsyncFrame extends AsyncFrame {
                 Logger.getLogger(MessageAsyncFrame.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
+
+        // 残処理モードの場合は期限までキューの残りを処理する
+        drainBacklog();
+    }
+
+    /**
+     * 子スレッド側の残処理
+     * 残処理モードでない場合は従来通り何もしない
+     */
+    private void drainBacklog() {
+        if (getState() != FrameState.DRAINING) {
+            return;
+        }
+        while (!isDrainExpired()) {
+            MessagePayload msg = queue.poll();
+            if (msg == null) {
+                break;
+            }
+            process(msg);
+        }
+        if (!queue.isEmpty()) {
+            log.warning("子スレッドの残処理が期限内に完了しませんでした[未処理:" + queue.size() + "]");
+        }
+    }
+
+    /**
+     * 共有ワーカープール対応判定
+     * @return childRunをオーバーライドしていない場合true
+     */
+    @Override
+    boolean isSliceable() {
+        return !isOverridden(MessageAsyncFrame.class, "childRun");
+    }
+
+    /**
+     * 共有ワーカープールでの処理開始時処理
+     */
+    @Override
+    void sliceBegin() {
+        // 親スレッド側は子スレッドが停止しても継続動作させる
+        setPersist();
+    }
+
+    /**
+     * 共有ワーカープールでの1回分の処理
+     * @param quantum_ 処理する最大件数
+     * @return 処理可能なメッセージが残っている場合true
+     */
+    @Override
+    boolean runSlice(int quantum_) {
+        for (int i = 0; i < quantum_; i++) {
+            if (childend) {
+                return true;
+            }
+            MessagePayload msg = queue.poll();
+            if (msg == null) {
+                return false;
+            }
+            process(msg);
+        }
+        return !queue.isEmpty();
+    }
+
+    /**
+     * 共有ワーカープールでの処理終了時処理
+     */
+    @Override
+    void sliceEnd() {
+        drainBacklog();
+    }
+
+    /**
+     * 処理可能なメッセージ有無判定
+     * @return キューにメッセージがある場合true
+     */
+    @Override
+    boolean hasWork() {
+        return !queue.isEmpty();
+    }
+
+    /**
+     * 子スレッドでの1件分のメッセージ処理
+     * 1件の異常で子スレッドを停止させないよう、例外は記録のみとして後続のメッセージの処理を継続する
+     * @param msg メッセージペイロードインスタンス
+     */
+    private void process(MessagePayload msg) {
+        FrameMetrics m = getMetrics();
+        long start = System.nanoTime();
+        m.recordWait(start - msg.enqueued);
+        try {
+            format(msg);
+            executeProcess(msg);
+        } catch (RuntimeException ex) {
+            m.recordError();
+            log.log(Level.SEVERE, "メッセージの処理に失敗しました", ex);
+        } finally {
+            m.recordService(System.nanoTime() - start, 1);
+        }
+    }
+
+    /**
+     * 親スレッド側の残処理
+     * 期限まで送信待ちメッセージを送信する
+     * @param deadline_ 期限(System.nanoTime基準)
+     */
+    @Override
+    public void drainParent(long deadline_) {
+        if (!parent) {
+            ((MessageAsyncFrame)parentFrame).drainParent(deadline_);
+            return;
+        }
+        while ((!queue.isEmpty() || !pending.isEmpty()) && (System.nanoTime() - deadline_ < 0)) {
+            parentRun();
+        }
+    }
+
+    /**
+     * 未処理件数取得
+     * @return 親スレッド、子スレッドのキューに残っている件数(集約送信で持ち越した送信先数を含む)
+     */
+    @Override
+    public long getPendingCount() {
+        MessageAsyncFrame p = parent ? this : (MessageAsyncFrame)parentFrame;
+        return getReceiveQueue().size() + getWorkerQueue().size() + p.pending.size();
+    }
+
+    /**
+     * 残処理中の拒否件数取得
+     * @return 残処理中に受付を拒否したメッセージ数
+     */
+    @Override
+    public long getDrainRejectedCount() {
+        if (!parent) {
+            return parentFrame.getDrainRejectedCount();
+        }
+        return drainRejected.get();
     }
 
     /**
@@ -116,7 +517,16 @@ public abstract class MessageAsyncFrame extends AsyncFrame {
      * @param msg メッセージペイロードインスタンス
      */
     private void addMessage(MessagePayload msg) {
+        // 残処理モードでは新たなメッセージを受け付けない
+        if (!parent && isDraining()) {
+            ((MessageAsyncFrame)parentFrame).onRejected(msg);
+            return;
+        }
         queue.add(msg);
+        // 子スレッド側キューへの追加の場合は待機中の子スレッドを起こす
+        if (!parent) {
+            wakeup();
+        }
     }
 
     /**
@@ -135,6 +545,26 @@ public abstract class MessageAsyncFrame extends AsyncFrame {
         ((MessageAsyncFrame)childFrame).addMessage(msg);
     }
 
+    /**
+     * 子スレッド側キューの容量超過、または残処理中による拒否時処理
+     * 親スレッドインスタンスに対して、sendMessageを呼び出したスレッドで呼び出される
+     * @param msg 拒否したメッセージペイロードインスタンス
+     */
+    protected void onRejected(MessagePayload msg) {
+        // 大量に拒否した場合にログが溢れないよう間引いて出力する
+        if (isDraining()) {
+            long n = drainRejected.incrementAndGet();
+            if (n % 1000 == 1) {
+                log.warning("残処理中のためメッセージを拒否しました[累計:" + n + "]");
+            }
+            return;
+        }
+        long n = getWorkerQueue().getRejectedCount();
+        if (n % 1000 == 1) {
+            log.warning("キュー容量超過のためメッセージを拒否しました[累計:" + n + "]");
+        }
+    }
+
     /**
      * メッセージ加工処理
      * @param msg メッセージペイロードインスタンス
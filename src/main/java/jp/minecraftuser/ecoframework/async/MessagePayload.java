@@ -8,10 +8,23 @@ import org.bukkit.command.CommandSender;
  * メインスレッドと非同期スレッド間のデータ送受用クラス(メッセージ送受用)
  * @author ecolight
  */
-public class MessagePayload extends PayloadFrame {
+public class MessagePayload extends PayloadFrame implements Recyclable {
     private CommandSender sender;
     private CommandSender target;
     private String msg;
+    private String template = null;
+    private String[] args = null;
+    private boolean prefix = false;
+    private boolean color = false;
+
+    /**
+     * コンストラクタ(再利用プール用)
+     * setMessageまたはsetTemplateで内容を設定してから使用する
+     * @param plg_ プラグインインスタンス(ただし通信に用いられる可能性を念頭に一定以上の情報は保持しない)
+     */
+    public MessagePayload(PluginFrame plg_) {
+        super(plg_);
+    }
 
     /**
      * コンストラクタ
@@ -26,6 +39,77 @@ public class MessagePayload extends PayloadFrame {
         target = target_;
         msg = msg_;
     }
+
+    /**
+     * コンストラクタ(テンプレート指定)
+     * メッセージの整形(MessageFormat、色置換、プラグイン名プリフィックス付与)はMessageAsyncFrameの子スレッドで行う
+     * @param plg_ プラグインインスタンス(ただし通信に用いられる可能性を念頭に一定以上の情報は保持しない)
+     * @param sender_ 送信者
+     * @param target_ 送信先
+     * @param template_ 送信メッセージのテンプレート(MessageFormat形式 引数が無い場合はそのまま使用する)
+     * @param args_ テンプレートの引数
+     * @param prefix_ プラグイン名のプリフィックスを付与する場合true(Utl.sendPluginMessage相当)
+     * @param color_ テンプレートの色置換(Utl.repColor)を行う場合true
+     */
+    public MessagePayload(PluginFrame plg_, CommandSender sender_, CommandSender target_, String template_, String[] args_, boolean prefix_, boolean color_) {
+        super(plg_);
+        sender = sender_;
+        target = target_;
+        template = template_;
+        args = args_;
+        prefix = prefix_;
+        color = color_;
+    }
+    
+    /**
+     * 送信内容設定
+     * 再利用プールから取得したインスタンスに設定する
+     * @param sender_ 送信者
+     * @param target_ 送信先
+     * @param msg_ 送信メッセージ
+     * @return 自インスタンス
+     */
+    public MessagePayload setMessage(CommandSender sender_, CommandSender target_, String msg_) {
+        sender = sender_;
+        target = target_;
+        msg = msg_;
+        template = null;
+        args = null;
+        prefix = false;
+        color = false;
+        return this;
+    }
+
+    /**
+     * 送信内容設定(テンプレート指定)
+     * 再利用プールから取得したインスタンスに設定する
+     * @param sender_ 送信者
+     * @param target_ 送信先
+     * @param template_ 送信メッセージのテンプレート
+     * @param args_ テンプレートの引数
+     * @param prefix_ プラグイン名のプリフィックスを付与する場合true
+     * @param color_ テンプレートの色置換を行う場合true
+     * @return 自インスタンス
+     */
+    public MessagePayload setTemplate(CommandSender sender_, CommandSender target_, String template_, String[] args_, boolean prefix_, boolean color_) {
+        sender = sender_;
+        target = target_;
+        msg = null;
+        template = template_;
+        args = args_;
+        prefix = prefix_;
+        color = color_;
+        return this;
+    }
+
+    /**
+     * 再利用前の初期化
+     * 送信者、送信先の参照を解放する
+     */
+    @Override
+    public void recycle() {
+        setMessage(null, null, null);
+    }
     
     /**
      * sender取得
@@ -50,4 +134,55 @@ public class MessagePayload extends PayloadFrame {
     public String getMessage() {
         return msg;
     }
+
+    /**
+     * 整形済み判定
+     * @return 送信メッセージが確定している場合true
+     */
+    public boolean isFormatted() {
+        return template == null;
+    }
+
+    /**
+     * テンプレート取得
+     * @return String 送信メッセージのテンプレート(整形済みの場合null)
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * テンプレート引数取得
+     * @return String[] テンプレートの引数
+     */
+    public String[] getArgs() {
+        return args;
+    }
+
+    /**
+     * プリフィックス付与判定
+     * @return プラグイン名のプリフィックスを付与する場合true
+     */
+    public boolean isPrefix() {
+        return prefix;
+    }
+
+    /**
+     * 色置換判定
+     * @return テンプレートの色置換を行う場合true
+     */
+    public boolean isColor() {
+        return color;
+    }
+
+    /**
+     * 整形済みメッセージ設定
+     * 設定後はテンプレート情報を破棄する
+     * @param msg_ 整形済みメッセージ
+     */
+    void setFormatted(String msg_) {
+        msg = msg_;
+        template = null;
+        args = null;
+    }
 }
@@ -0,0 +1,49 @@
+
+package jp.minecraftuser.ecoframework.async;
+
+/**
+ * 容量上限付きキューの溢れ時動作
+ * @author ecolight
+ */
+public enum OverflowPolicy {
+    /**
+     * 空きが出るまで追加元を待機させる
+     * メインスレッドからの追加、および待機時間超過の場合はREJECTとして扱う
+     */
+    BLOCK,
+    /**
+     * 最も古いDataを破棄して追加する
+     */
+    DROP_OLDEST,
+    /**
+     * 追加しようとしたDataを破棄する
+     */
+    DROP_NEWEST,
+    /**
+     * 同一の集約キー(PayloadFrame.getCoalesceKey)を持つ滞留Dataを置き換える
+     * 該当するDataが無い場合はREJECTとして扱う
+     */
+    COALESCE,
+    /**
+     * 追加しようとしたDataを破棄して拒否通知を呼び出す
+     */
+    REJECT;
+
+    /**
+     * 設定文字列からの変換
+     * @param str 設定文字列(大文字小文字は区別しない)
+     * @param def 変換できない場合の既定値
+     * @return 溢れ時動作
+     */
+    public static OverflowPolicy parse(String str, OverflowPolicy def) {
+        if (str == null) {
+            return def;
+        }
+        for (OverflowPolicy p : values()) {
+            if (p.name().equalsIgnoreCase(str.replace('-', '_'))) {
+                return p;
+            }
+        }
+        return def;
+    }
+}
@@ -2,7 +2,9 @@
 package jp.minecraftuser.ecoframework.async;
 
 import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
 import jp.minecraftuser.ecoframework.PluginFrame;
+import jp.minecraftuser.ecoframework.PluginVersion;
 import jp.minecraftuser.ecoframework.iface.ReloadNotifiable;
 
 /**
@@ -10,38 +12,32 @@ import jp.minecraftuser.ecoframework.iface.ReloadNotifiable;
  * @author ecolight
  */
 public abstract class PayloadFrame implements Serializable, ReloadNotifiable {
-    private String name = "";
-    private long major = -1;
-    private long minor = -1;
-    private long revision = -1;
-    private boolean snapshot = false;
+    // プラグインバージョン情報はPluginFrame単位で共有する
+    private final PluginVersion version;
+    // AsyncProcessFrame.submitで依頼された場合の応答通知先(送受対象外)
+    transient volatile CompletableFuture<Object> future = null;
+    transient long deadline = 0;
+    // キュー追加時刻(待ち時間の計測用)
+    transient long enqueued = 0;
+    // 処理に失敗した回数(再試行の判定用)
+    transient int attempts = 0;
+    private Priority priority = Priority.NORMAL;
 
     /**
      * コンストラクタ
      * @param plg_ プラグインインスタンス(ただし通信に用いられる可能性を念頭に一定以上の情報は保持しない)
      */
     public PayloadFrame(PluginFrame plg_) {
-        name = plg_.getDescription().getName();
-        String[] versions = plg_.getDescription().getVersion().split("[. -]");
-        for (String s : versions) {
-            try {
-                if (s.equalsIgnoreCase("snapshot")) {
-                    snapshot = true;
-                    continue;
-                }
-                long num = Long.parseLong(s);
-                if (major == -1) {
-                    major = num;
-                } else if (minor == -1) {
-                    minor = num;
-                } else if (revision == -1) {
-                    revision = num;
-                }
-            } catch (NumberFormatException e) {
-                plg_.getLogger().info(e.getLocalizedMessage());
-                plg_.getLogger().info("Payload:version解析不能文字検出[" + s);
-            }
-        }
+        this(plg_.getPluginVersion());
+    }
+
+    /**
+     * コンストラクタ(バージョン情報指定)
+     * 解析済みのバージョン情報を参照するのみのため、生成頻度の高いペイロードでも負荷にならない
+     * @param version_ プラグインバージョン情報
+     */
+    public PayloadFrame(PluginVersion version_) {
+        version = version_;
     }
 
     /**
@@ -49,56 +45,83 @@ public abstract class PayloadFrame implements Serializable, ReloadNotifiable {
      * @return プラグイン名
      */
     public String getName() {
-        return name;
+        return version.getName();
     }
     /**
      * フレーム送出プラグインバージョン(Major)
      * @return バージョン(Major)
      */
     public long getMajorVersion() {
-        return major;
+        return version.getMajor();
     }
     /**
      * フレーム送出プラグインバージョン(Minor)
      * @return バージョン(Minor)
      */
     public long getMinorVersion() {
-        return minor;
+        return version.getMinor();
     }
     /**
      * フレーム送出プラグインバージョン(Revision)
      * @return バージョン(Reivision)
      */
     public long getRevision() {
-        return revision;
+        return version.getRevision();
     }
     /**
      * フレーム送出プラグインSnapshot判定
      * @return Snapshot判定
      */
     public boolean isSnapshot() {
-        return snapshot;
+        return version.isSnapshot();
+    }
+    /**
+     * フレーム送出プラグインバージョン情報
+     * @return バージョン情報
+     */
+    public PluginVersion getPluginVersion() {
+        return version;
+    }
+    /**
+     * 優先度取得
+     * キューへの追加時に参照し、優先度毎のレーンに振り分ける
+     * @return 優先度
+     */
+    public Priority getPriority() {
+        return priority;
     }
+    /**
+     * 優先度設定
+     * キューへの追加前に設定すること
+     * @param priority_ 優先度(nullの場合はNORMAL)
+     */
+    public void setPriority(Priority priority_) {
+        priority = (priority_ == null) ? Priority.NORMAL : priority_;
+    }
+    /**
+     * 振り分けキー取得
+     * 複数の子スレッドを持つAsyncProcessFrameでは同一キーのペイロードを同一の子スレッドで順に処理する
+     * キー単位の処理順序が必要な場合はプレイヤーUUID等を返却するようオーバーライドすること
+     * @return 振り分けキー(nullの場合は振り分け先を限定しない)
+     */
+    public Object getPartitionKey() {
+        return null;
+    }
+    /**
+     * 集約キー取得
+     * キューの溢れ時動作がCOALESCEの場合、同一キーの滞留ペイロードを新しいペイロードで置き換える
+     * 最新の状態のみ処理すればよいペイロード(プレイヤーデータ保存等)はオーバーライドすること
+     * @return 集約キー(nullの場合は集約しない)
+     */
+    public Object getCoalesceKey() {
+        return null;
+    }
+
     /**
      * フレーム送出プラグインバージョン取得処理
      * @return バージョン
      */
     public String getVersion() {
-        StringBuilder sb = new StringBuilder();
-        if (major != -1) {
-            sb.append(major);
-        }
-        if (minor != -1) {
-            sb.append(".");
-            sb.append(minor);
-        }
-        if (revision != -1) {
-            sb.append(".");
-            sb.append(revision);
-        }
-        if (snapshot) {
-            sb.append("-SNAPSHOT");
-        }
-        return sb.toString();
+        return version.toString();
     }
 }
@@ -0,0 +1,102 @@
+
+package jp.minecraftuser.ecoframework.async;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * ペイロードの再利用プール
+ * 大量に生成されるペイロードを使い回し、生成と破棄による負荷(GC)を削減する
+ * 取得(acquire)、返却(release)とも任意のスレッドから呼び出し可
+ * AsyncProcessFrame、MessageAsyncFrameに設定した場合は親スレッド側処理の完了後に自動で返却される
+ * @author ecolight
+ * @param <T> ペイロード型(Recyclableを実装すること)
+ */
+public final class PayloadPool<T extends PayloadFrame & Recyclable> {
+    private final Class<T> type;
+    private final Supplier<T> factory;
+    private final int max;
+    private final ConcurrentLinkedQueue<T> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    /**
+     * コンストラクタ
+     * @param type_ ペイロード型(返却時の型判定に使用する)
+     * @param factory_ プールが空の場合の生成処理
+     * @param max_ プールに保持する最大数(超過分は返却時に破棄する)
+     */
+    public PayloadPool(Class<T> type_, Supplier<T> factory_, int max_) {
+        type = type_;
+        factory = factory_;
+        max = Math.max(0, max_);
+    }
+
+    /**
+     * ペイロード取得
+     * プールが空の場合は新たに生成する
+     * @return 初期化済みのペイロードインスタンス
+     */
+    public T acquire() {
+        T data = pool.poll();
+        if (data == null) {
+            created.incrementAndGet();
+            return factory.get();
+        }
+        size.decrementAndGet();
+        reused.incrementAndGet();
+        return data;
+    }
+
+    /**
+     * ペイロード返却
+     * 初期化(recycle)してプールに戻す プールの対象外の型、または最大数に達している場合は何もしない
+     * 応答待ち(submit)のペイロードは返却しない
+     * @param data_ ペイロードインスタンス
+     * @return プールに戻した場合true
+     */
+    public boolean release(PayloadFrame data_) {
+        if (!type.isInstance(data_) || (data_.future != null)) {
+            return false;
+        }
+        if (size.incrementAndGet() > max) {
+            size.decrementAndGet();
+            return false;
+        }
+        T data = type.cast(data_);
+        data.recycle();
+        data.deadline = 0;
+        data.enqueued = 0;
+        data.attempts = 0;
+        data.setPriority(Priority.NORMAL);
+        pool.add(data);
+        return true;
+    }
+
+    /**
+     * プール保持数取得
+     * @return プールに保持しているペイロード数
+     */
+    public int getSize() {
+        return size.get();
+    }
+
+    /**
+     * 生成数取得
+     * @return プールが空のため新たに生成した数の累計
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * 再利用数取得
+     * @return プールから再利用した数の累計
+     */
+    public long getReusedCount() {
+        return reused.get();
+    }
+}
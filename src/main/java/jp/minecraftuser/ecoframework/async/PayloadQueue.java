@@ -0,0 +1,728 @@
+
+package jp.minecraftuser.ecoframework.async;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import org.bukkit.Bukkit;
+
+/**
+ * 非同期フレーム用ペイロードキュー
+ * 既存のConcurrentLinkedQueueとして扱えるまま、滞留数の管理と容量上限を付与する
+ * 容量上限を超えた場合の動作はOverflowPolicyで指定する
+ * ペイロードの優先度(Priority)毎のレーンを持ち、pollはレーンの重みに従って公平に取り出す
+ * NORMALレーンは基底クラスの領域を使用するため、走査、一括削除系の処理は全レーンを対象とするようオーバーライドしている
+ * 滞留数はoffer/poll/remove/clearで管理するため、イテレータ経由の削除はできない(removeIf等を使用すること)
+ * @author ecolight
+ * @param <T> ペイロード型
+ */
+public class PayloadQueue<T extends PayloadFrame> extends ConcurrentLinkedQueue<T> {
+    private static final int RETRY_MAX = 3;
+    private static final int WEIGHT_MAX = 100;
+    private static final Priority[] LANES = Priority.values();
+    // HIGH/BULKレーン(NORMALレーンは基底クラスの領域を使用する)
+    private final ConcurrentLinkedQueue<T> high = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<T> bulk = new ConcurrentLinkedQueue<>();
+    private final AtomicIntegerArray laneDepth = new AtomicIntegerArray(LANES.length);
+    private final AtomicLongArray waitTotal = new AtomicLongArray(LANES.length);
+    private final AtomicLongArray waitCount = new AtomicLongArray(LANES.length);
+    private final AtomicLongArray waitMax = new AtomicLongArray(LANES.length);
+    private final int[] weights = new int[LANES.length];
+    private final AtomicInteger cursor = new AtomicInteger();
+    private volatile Priority[] schedule;
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    private volatile int capacity = 0;
+    private volatile OverflowPolicy policy = OverflowPolicy.REJECT;
+    private volatile long blockTimeout = 1000;
+    private final AtomicInteger highWater = new AtomicInteger();
+    private volatile Consumer<T> rejectHandler = null;
+    private volatile Consumer<T> discardHandler = null;
+
+    /**
+     * コンストラクタ
+     */
+    public PayloadQueue() {
+        setWeights(Priority.HIGH.getDefaultWeight(), Priority.NORMAL.getDefaultWeight(), Priority.BULK.getDefaultWeight());
+    }
+
+    /**
+     * レーンの重み設定
+     * 各レーンに滞留がある場合、おおよそ重みの比率で取り出す
+     * @param high_ HIGHレーンの重み
+     * @param normal_ NORMALレーンの重み
+     * @param bulk_ BULKレーンの重み
+     */
+    public final synchronized void setWeights(int high_, int normal_, int bulk_) {
+        weights[Priority.HIGH.ordinal()] = Math.min(WEIGHT_MAX, Math.max(1, high_));
+        weights[Priority.NORMAL.ordinal()] = Math.min(WEIGHT_MAX, Math.max(1, normal_));
+        weights[Priority.BULK.ordinal()] = Math.min(WEIGHT_MAX, Math.max(1, bulk_));
+        // 重みの大きいレーンが連続しないよう平滑化した取り出し順を作成する(smooth weighted round robin)
+        int total = 0;
+        for (int w : weights) {
+            total += w;
+        }
+        Priority[] s = new Priority[total];
+        int[] cur = new int[LANES.length];
+        for (int k = 0; k < total; k++) {
+            int best = 0;
+            for (int i = 0; i < LANES.length; i++) {
+                cur[i] += weights[i];
+                if (cur[i] > cur[best]) {
+                    best = i;
+                }
+            }
+            cur[best] -= total;
+            s[k] = LANES[best];
+        }
+        schedule = s;
+    }
+
+    /**
+     * レーンの重み設定(設定文字列指定)
+     * "HIGH,NORMAL,BULK"の順にカンマ区切りで指定する(例 "4,2,1")
+     * @param str 設定文字列(nullまたは不正な場合は変更しない)
+     * @return 設定した場合true
+     */
+    public boolean setWeights(String str) {
+        if (str == null) {
+            return false;
+        }
+        String[] w = str.split(",");
+        if (w.length != LANES.length) {
+            return false;
+        }
+        try {
+            setWeights(Integer.parseInt(w[0].trim()), Integer.parseInt(w[1].trim()), Integer.parseInt(w[2].trim()));
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 容量上限設定
+     * @param capacity_ 容量上限(0以下の場合は上限なし)
+     * @param policy_ 溢れ時動作
+     * @param blockTimeout_ BLOCK指定時の最大待機時間(ミリ秒)
+     */
+    public void setLimit(int capacity_, OverflowPolicy policy_, long blockTimeout_) {
+        capacity = Math.max(0, capacity_);
+        policy = (policy_ == null) ? OverflowPolicy.REJECT : policy_;
+        blockTimeout = Math.max(0, blockTimeout_);
+    }
+
+    /**
+     * 拒否通知先設定
+     * 拒否されたDataを引数に追加元のスレッドで呼び出される
+     * @param handler_ 拒否通知先
+     */
+    public void setRejectHandler(Consumer<T> handler_) {
+        rejectHandler = handler_;
+    }
+
+    /**
+     * 破棄通知先設定
+     * DROP_OLDEST/DROP_NEWEST/COALESCEで破棄されたDataを引数に追加元のスレッドで呼び出される
+     * @param handler_ 破棄通知先
+     */
+    public void setDiscardHandler(Consumer<T> handler_) {
+        discardHandler = handler_;
+    }
+
+    /**
+     * キューへの追加
+     * 容量上限に達している場合は溢れ時動作に従う
+     * @param e ペイロードインスタンス
+     * @return 追加できた場合true
+     */
+    @Override
+    public boolean offer(T e) {
+        if (e == null) throw new NullPointerException();
+        int retry = 0;
+        while (!reserve()) {
+            // 空きを作れなかった場合は追加しない
+            if ((retry++ >= RETRY_MAX) || !makeRoom(e)) {
+                if (retry > RETRY_MAX) reject(e);
+                return false;
+            }
+        }
+        Priority p = e.getPriority();
+        e.enqueued = System.nanoTime();
+        laneDepth.incrementAndGet(p.ordinal());
+        if (p == Priority.NORMAL) {
+            super.offer(e);
+        } else {
+            laneOf(p).offer(e);
+        }
+        enqueued.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * キューへの一括追加
+     * @param c ペイロードインスタンスのコレクション
+     * @return 1件でも追加できた場合true
+     */
+    @Override
+    public boolean addAll(Collection<? extends T> c) {
+        boolean modified = false;
+        for (T e : c) {
+            modified |= offer(e);
+        }
+        return modified;
+    }
+
+    /**
+     * キューからの取り出し
+     * レーンの重みに従って取り出すレーンを決定し、空のレーンは飛ばす
+     * @return ペイロードインスタンス(空の場合null)
+     */
+    @Override
+    public T poll() {
+        // NORMALレーンのみ使用している場合は重み付けしない
+        if ((laneDepth.get(Priority.HIGH.ordinal()) == 0) && (laneDepth.get(Priority.BULK.ordinal()) == 0)) {
+            return pollLane(Priority.NORMAL);
+        }
+        Priority[] s = schedule;
+        int start = cursor.getAndIncrement();
+        for (int i = 0; i < s.length; i++) {
+            Priority p = s[Math.floorMod(start + i, s.length)];
+            if (laneDepth.get(p.ordinal()) == 0) {
+                continue;
+            }
+            T e = pollLane(p);
+            if (e != null) {
+                return e;
+            }
+        }
+        // 追加中で滞留数のみ先行している場合に備えて全レーンを確認する
+        for (Priority p : LANES) {
+            T e = pollLane(p);
+            if (e != null) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 先頭の参照
+     * 重みは考慮せずHIGH、NORMAL、BULKの順に確認する
+     * @return ペイロードインスタンス(空の場合null)
+     */
+    @Override
+    public T peek() {
+        T e = high.peek();
+        if (e == null) {
+            e = super.peek();
+        }
+        if (e == null) {
+            e = bulk.peek();
+        }
+        return e;
+    }
+
+    /**
+     * 空判定
+     * @return 全レーンが空の場合true
+     */
+    @Override
+    public boolean isEmpty() {
+        return high.isEmpty() && super.isEmpty() && bulk.isEmpty();
+    }
+
+    /**
+     * 存在確認
+     * @param o 確認対象
+     * @return いずれかのレーンに存在する場合true
+     */
+    @Override
+    public boolean contains(Object o) {
+        return high.contains(o) || super.contains(o) || bulk.contains(o);
+    }
+
+    /**
+     * イテレータ取得
+     * HIGH、NORMAL、BULKの順に走査する(削除は不可)
+     * @return イテレータ
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<T> iterator() {
+        final Iterator<T>[] its = new Iterator[]{high.iterator(), super.iterator(), bulk.iterator()};
+        return new Iterator<T>() {
+            private int idx = 0;
+            @Override
+            public boolean hasNext() {
+                while (idx < its.length) {
+                    if (its[idx].hasNext()) {
+                        return true;
+                    }
+                    idx++;
+                }
+                return false;
+            }
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return its[idx].next();
+            }
+        };
+    }
+
+    /**
+     * 分割イテレータ取得
+     * stream等で使用する 全レーンをiteratorの順に走査する
+     * @return 分割イテレータ
+     */
+    @Override
+    public Spliterator<T> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.CONCURRENT);
+    }
+
+    /**
+     * 全要素の処理
+     * @param action 処理
+     */
+    @Override
+    public void forEach(Consumer<? super T> action) {
+        if (action == null) throw new NullPointerException();
+        for (Iterator<T> it = iterator(); it.hasNext();) {
+            action.accept(it.next());
+        }
+    }
+
+    /**
+     * 配列変換
+     * @return 全レーンの要素の配列
+     */
+    @Override
+    public Object[] toArray() {
+        return snapshot().toArray();
+    }
+
+    /**
+     * 配列変換(型指定)
+     * @param <E> 配列の要素型
+     * @param a 格納先配列
+     * @return 全レーンの要素の配列
+     */
+    @Override
+    public <E> E[] toArray(E[] a) {
+        return snapshot().toArray(a);
+    }
+
+    /**
+     * 文字列変換
+     * @return 全レーンの要素の文字列表現
+     */
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * 全レーンの要素の複製取得
+     * @return HIGH、NORMAL、BULKの順の要素のリスト
+     */
+    private List<T> snapshot() {
+        List<T> list = new ArrayList<>();
+        for (Iterator<T> it = iterator(); it.hasNext();) {
+            list.add(it.next());
+        }
+        return list;
+    }
+
+    /**
+     * 条件指定の削除
+     * 滞留数を合わせるため1件ずつremoveで削除する
+     * @param filter 削除条件
+     * @return 1件でも削除した場合true
+     */
+    @Override
+    public boolean removeIf(Predicate<? super T> filter) {
+        if (filter == null) throw new NullPointerException();
+        boolean modified = false;
+        for (T e : snapshot()) {
+            if (filter.test(e) && remove(e)) {
+                modified = true;
+            }
+        }
+        return modified;
+    }
+
+    /**
+     * 一括削除
+     * @param c 削除対象のコレクション
+     * @return 1件でも削除した場合true
+     */
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        if (c == null) throw new NullPointerException();
+        return removeIf(c::contains);
+    }
+
+    /**
+     * 指定以外の一括削除
+     * @param c 残す対象のコレクション
+     * @return 1件でも削除した場合true
+     */
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        if (c == null) throw new NullPointerException();
+        return removeIf(e -> !c.contains(e));
+    }
+
+    /**
+     * キューからの削除
+     * @param o 削除対象
+     * @return 削除できた場合true
+     */
+    @Override
+    public boolean remove(Object o) {
+        for (Priority p : LANES) {
+            boolean removed = (p == Priority.NORMAL) ? super.remove(o) : laneOf(p).remove(o);
+            if (removed) {
+                laneDepth.decrementAndGet(p.ordinal());
+                released();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * キューの全削除
+     */
+    @Override
+    public void clear() {
+        while (poll() != null) {
+            // 滞留数を合わせるためpollで取り出す
+        }
+    }
+
+    /**
+     * 滞留数取得
+     * ConcurrentLinkedQueueと異なり定数時間で返却する
+     * @return 全レーンの滞留数
+     */
+    @Override
+    public int size() {
+        return depth.get();
+    }
+
+    /**
+     * レーン取得
+     * @param p 優先度
+     * @return レーンのキュー(NORMALの場合は基底クラスの領域を操作するため本インスタンスではなくsuper経由で扱う)
+     */
+    private ConcurrentLinkedQueue<T> laneOf(Priority p) {
+        switch (p) {
+            case HIGH:
+                return high;
+            case BULK:
+                return bulk;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * レーン指定の取り出し
+     * @param p 優先度
+     * @return ペイロードインスタンス(空の場合null)
+     */
+    private T pollLane(Priority p) {
+        T e = (p == Priority.NORMAL) ? super.poll() : laneOf(p).poll();
+        if (e != null) {
+            int i = p.ordinal();
+            laneDepth.decrementAndGet(i);
+            // 待ち時間の記録
+            long w = System.nanoTime() - e.enqueued;
+            waitTotal.addAndGet(i, w);
+            waitCount.incrementAndGet(i);
+            long max;
+            while ((max = waitMax.get(i)) < w) {
+                if (waitMax.compareAndSet(i, max, w)) {
+                    break;
+                }
+            }
+            released();
+        }
+        return e;
+    }
+
+    /**
+     * 追加枠の確保
+     * @return 確保できた場合true
+     */
+    private boolean reserve() {
+        while (true) {
+            int d = depth.get();
+            int cap = capacity;
+            if ((cap > 0) && (d >= cap)) {
+                return false;
+            }
+            if (depth.compareAndSet(d, d + 1)) {
+                // 並行して追加された場合も最大値を失わないようにする
+                highWater.accumulateAndGet(d + 1, Math::max);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 取り出しによる枠の解放
+     */
+    private void released() {
+        depth.decrementAndGet();
+        // 空き待ちしている追加元がいる場合のみ起こす
+        if (waiters.get() > 0) {
+            lock.lock();
+            try {
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 溢れ時動作
+     * @param e 追加しようとしたペイロードインスタンス
+     * @return 空きを作れた場合true
+     */
+    private boolean makeRoom(T e) {
+        switch (policy) {
+            case DROP_OLDEST:
+                // 優先度の低いレーンから破棄する
+                T old = null;
+                for (int i = LANES.length - 1; (i >= 0) && (old == null); i--) {
+                    old = pollLane(LANES[i]);
+                }
+                if (old != null) {
+                    dropped.incrementAndGet();
+                    discard(old);
+                }
+                return true;
+            case DROP_NEWEST:
+                dropped.incrementAndGet();
+                discard(e);
+                return false;
+            case COALESCE:
+                Object key = e.getCoalesceKey();
+                if (key != null) {
+                    for (T q : this) {
+                        if (key.equals(q.getCoalesceKey()) && remove(q)) {
+                            coalesced.incrementAndGet();
+                            discard(q);
+                            return true;
+                        }
+                    }
+                }
+                reject(e);
+                return false;
+            case BLOCK:
+                // メインスレッドは待機させない
+                if (!Bukkit.isPrimaryThread() && awaitSpace()) {
+                    return true;
+                }
+                reject(e);
+                return false;
+            case REJECT:
+            default:
+                reject(e);
+                return false;
+        }
+    }
+
+    /**
+     * 空き待ち
+     * @return 待機時間内に空きができた場合true
+     */
+    private boolean awaitSpace() {
+        blocked.incrementAndGet();
+        long nanos = TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+        lock.lock();
+        waiters.incrementAndGet();
+        try {
+            while ((capacity > 0) && (depth.get() >= capacity)) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waiters.decrementAndGet();
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 拒否処理
+     * @param e 拒否したペイロードインスタンス
+     */
+    private void reject(T e) {
+        rejected.incrementAndGet();
+        Consumer<T> h = rejectHandler;
+        if (h != null) {
+            h.accept(e);
+        }
+    }
+
+    /**
+     * 破棄処理
+     * @param e 破棄したペイロードインスタンス
+     */
+    private void discard(T e) {
+        Consumer<T> h = discardHandler;
+        if (h != null) {
+            h.accept(e);
+        }
+    }
+
+    /**
+     * レーン別滞留数取得
+     * @param p 優先度
+     * @return 指定レーンの滞留数
+     */
+    public int getLaneDepth(Priority p) {
+        return laneDepth.get(p.ordinal());
+    }
+
+    /**
+     * レーン別取り出し件数取得
+     * @param p 優先度
+     * @return 指定レーンから取り出した件数の累計
+     */
+    public long getLaneCount(Priority p) {
+        return waitCount.get(p.ordinal());
+    }
+
+    /**
+     * レーン別平均待ち時間取得
+     * @param p 優先度
+     * @return 指定レーンの追加から取り出しまでの平均時間(ミリ秒)
+     */
+    public double getLaneWaitAverage(Priority p) {
+        long n = waitCount.get(p.ordinal());
+        return (n == 0) ? 0 : (waitTotal.get(p.ordinal()) / (double) n / 1000000.0);
+    }
+
+    /**
+     * レーン別最大待ち時間取得
+     * @param p 優先度
+     * @return 指定レーンの追加から取り出しまでの最大時間(ミリ秒)
+     */
+    public double getLaneWaitMax(Priority p) {
+        return waitMax.get(p.ordinal()) / 1000000.0;
+    }
+
+    /**
+     * レーンの重み取得
+     * @param p 優先度
+     * @return 指定レーンの重み
+     */
+    public synchronized int getWeight(Priority p) {
+        return weights[p.ordinal()];
+    }
+
+    /**
+     * 容量上限取得
+     * @return 容量上限(0の場合は上限なし)
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 溢れ時動作取得
+     * @return 溢れ時動作
+     */
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * 最大滞留数取得
+     * @return 生成またはリセット以降の最大滞留数
+     */
+    public int getHighWaterMark() {
+        return highWater.get();
+    }
+
+    /**
+     * 最大滞留数リセット
+     */
+    public void resetHighWaterMark() {
+        highWater.set(depth.get());
+    }
+
+    /**
+     * 追加件数取得
+     * @return 追加できた件数の累計
+     */
+    public long getEnqueuedCount() {
+        return enqueued.get();
+    }
+
+    /**
+     * 破棄件数取得
+     * @return DROP_OLDEST/DROP_NEWESTで破棄した件数の累計
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * 集約件数取得
+     * @return COALESCEで置き換えた件数の累計
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * 拒否件数取得
+     * @return 拒否した件数の累計
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * 空き待ち回数取得
+     * @return BLOCKで追加元を待機させた回数の累計
+     */
+    public long getBlockedCount() {
+        return blocked.get();
+    }
+}
@@ -0,0 +1,196 @@
+
+package jp.minecraftuser.ecoframework.async;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import jp.minecraftuser.ecoframework.PluginFrame;
+
+/**
+ * パイプラインの処理段
+ * 子スレッドで加工したDataをメインスレッドを経由せずに次段の子スレッドへ転送する
+ * 最終段のみ親スレッド(メインスレッド)へ受け渡す
+ * 処理内容は親スレッドインスタンスに設定し、子スレッドインスタンスからは親スレッドインスタンス経由で参照する
+ * @author ecolight
+ */
+class PipelineStage extends AsyncProcessFrame {
+    private volatile Function<PayloadFrame, PayloadFrame> func = null;
+    private volatile Function<List<PayloadFrame>, List<PayloadFrame>> batchFunc = null;
+    private volatile PipelineStage upstream = null;
+    private volatile PipelineStage next = null;
+    private volatile Consumer<PayloadFrame> sink = null;
+
+    /**
+     * 親スレッド用コンストラクタ(子スレッド数は設定値)
+     * @param plg_ プラグインフレームインスタンス
+     * @param name_ 名前
+     */
+    PipelineStage(PluginFrame plg_, String name_) {
+        super(plg_, name_);
+    }
+
+    /**
+     * 親スレッド用コンストラクタ(子スレッド数指定)
+     * @param plg_ プラグインフレームインスタンス
+     * @param name_ 名前
+     * @param workers_ 子スレッド数
+     */
+    PipelineStage(PluginFrame plg_, String name_, int workers_) {
+        super(plg_, name_, workers_);
+    }
+
+    /**
+     * 子スレッド用コンストラクタ
+     * @param plg_ プラグインフレームインスタンス
+     * @param name_ 名前
+     * @param frame_ 親スレッド用フレーム
+     */
+    PipelineStage(PluginFrame plg_, String name_, AsyncFrame frame_) {
+        super(plg_, name_, frame_);
+    }
+
+    /**
+     * 処理段の接続
+     * 親スレッドインスタンスに対してData投入前に呼び出すこと
+     * @param func_ 1件単位の加工処理(バッチ処理の場合はnull)
+     * @param batchFunc_ バッチ単位の加工処理(1件単位の場合はnull)
+     * @param upstream_ 前段(先頭の場合はnull)
+     * @param next_ 次段(最終段の場合はnull)
+     * @param sink_ 最終段の親スレッド側処理(最終段以外、または不要な場合はnull)
+     */
+    void link(Function<PayloadFrame, PayloadFrame> func_, Function<List<PayloadFrame>, List<PayloadFrame>> batchFunc_,
+            PipelineStage upstream_, PipelineStage next_, Consumer<PayloadFrame> sink_) {
+        func = func_;
+        batchFunc = batchFunc_;
+        upstream = upstream_;
+        next = next_;
+        sink = sink_;
+    }
+
+    /**
+     * Data加工子スレッド側処理
+     * @param data_ ペイロードインスタンス
+     */
+    @Override
+    protected void executeProcess(PayloadFrame data_) {
+        PipelineStage p = (PipelineStage) parentFrame;
+        if (p.func == null) {
+            executeProcessBatch(Collections.singletonList(data_));
+            return;
+        }
+        PayloadFrame out;
+        try {
+            out = p.func.apply(data_);
+        } catch (RuntimeException ex) {
+            // 子スレッドを停止させないよう、再試行またはデッドレターキューに移す
+            getMetrics().recordError();
+            fail(data_, ex);
+            return;
+        }
+        relay(data_, out);
+    }
+
+    /**
+     * Data加工子スレッド側処理(バッチ)
+     * バッチ単位の加工処理が無い場合は1件ずつ加工する
+     * @param list ペイロードインスタンスのリスト
+     */
+    @Override
+    protected void executeProcessBatch(List<PayloadFrame> list) {
+        PipelineStage p = (PipelineStage) parentFrame;
+        if (p.batchFunc == null) {
+            super.executeProcessBatch(list);
+            return;
+        }
+        List<PayloadFrame> out;
+        try {
+            out = p.batchFunc.apply(list);
+        } catch (RuntimeException ex) {
+            getMetrics().recordError();
+            for (PayloadFrame data : list) {
+                fail(data, ex);
+            }
+            return;
+        }
+        // 出力に含まれない依頼は除外されたものとして扱う(応答通知先は同一インスタンスでのみ引き継ぐ)
+        Map<PayloadFrame, Boolean> passed = new IdentityHashMap<>();
+        if (out != null) {
+            for (PayloadFrame data : out) {
+                if (data != null) {
+                    passed.put(data, Boolean.TRUE);
+                    relay(data, data);
+                }
+            }
+        }
+        for (PayloadFrame data : list) {
+            if (!passed.containsKey(data)) {
+                relay(data, null);
+            }
+        }
+    }
+
+    /**
+     * 次段への転送
+     * 加工結果が別インスタンスの場合は応答通知先を引き継ぐ
+     * @param in_ 加工前のペイロードインスタンス
+     * @param out_ 加工後のペイロードインスタンス(nullの場合は除外)
+     */
+    private void relay(PayloadFrame in_, PayloadFrame out_) {
+        if (out_ == null) {
+            abandonLater(in_, new CancellationException("filtered by pipeline stage [" + name + "]"));
+            return;
+        }
+        if ((out_ != in_) && (out_.future == null)) {
+            // 依頼元のタイムアウト監視は加工前のインスタンスを参照するため共有する
+            out_.future = in_.future;
+        }
+        PipelineStage n = ((PipelineStage) parentFrame).next;
+        if (n == null) {
+            receiveData(out_);
+        } else {
+            n.transfer(out_);
+        }
+    }
+
+    /**
+     * 上流の処理段の稼働判定
+     * @return 前段の子スレッドが終了していない場合true
+     */
+    @Override
+    boolean isUpstreamActive() {
+        PipelineStage u = ((PipelineStage) parentFrame).upstream;
+        return (u != null) && !u.isTerminated();
+    }
+
+    /**
+     * Data加工後親スレッド側処理
+     * 最終段の親スレッドでのみ呼び出される
+     * @param data_ ペイロードインスタンス
+     */
+    @Override
+    protected void executeReceive(PayloadFrame data_) {
+        Consumer<PayloadFrame> s = sink;
+        if (s == null) {
+            return;
+        }
+        try {
+            s.accept(data_);
+        } catch (RuntimeException ex) {
+            log.log(Level.WARNING, "pipeline sink [" + name + "] failed.", ex);
+        }
+    }
+
+    /**
+     * 子スレッド用インスタンスの生成
+     * @return 子スレッド用インスタンス
+     */
+    @Override
+    protected AsyncFrame clone() {
+        return new PipelineStage(plg, name, this);
+    }
+}
@@ -0,0 +1,40 @@
+
+package jp.minecraftuser.ecoframework.async;
+
+/**
+ * ペイロードの優先度(キューのレーン)
+ * 各レーンは重み付きで公平に取り出され、低優先度のレーンも完全には待たされない
+ * @author ecolight
+ */
+public enum Priority {
+    /**
+     * 高優先度(ログアウト時のプレイヤーデータ保存等)
+     */
+    HIGH(4),
+    /**
+     * 通常(既定値)
+     */
+    NORMAL(2),
+    /**
+     * 低優先度(統計の一括保存等のまとめて処理すればよいもの)
+     */
+    BULK(1);
+
+    private final int weight;
+
+    /**
+     * コンストラクタ
+     * @param weight_ 既定の重み
+     */
+    private Priority(int weight_) {
+        weight = weight_;
+    }
+
+    /**
+     * 既定の重み取得
+     * @return 取り出し比率の重み
+     */
+    public int getDefaultWeight() {
+        return weight;
+    }
+}
@@ -0,0 +1,16 @@
+
+package jp.minecraftuser.ecoframework.async;
+
+/**
+ * 再利用可能なペイロード
+ * PayloadPoolに返却する際にrecycleを呼び出し、保持している参照を解放する
+ * 親スレッド側処理(executeReceive等)の完了後に返却されるため、処理後にペイロードの参照を保持しないこと
+ * @author ecolight
+ */
+public interface Recyclable {
+    /**
+     * 再利用前の初期化
+     * 送信先やメッセージ等、次の利用者に引き継いではならない内容を全て初期化すること
+     */
+    void recycle();
+}
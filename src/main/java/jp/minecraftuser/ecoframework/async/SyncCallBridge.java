@@ -0,0 +1,177 @@
+
+package jp.minecraftuser.ecoframework.async;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * 子スレッドからのメインスレッド呼び出し中継
+ * プラグイン単位で依頼を集約し、1tickにつき1回のメインスレッド処理でまとめて実行する
+ * メインスレッドは子スレッドを待機しない(結果はFutureで子スレッドへ返却する)
+ * @author ecolight
+ */
+final class SyncCallBridge implements Runnable {
+    private static final ConcurrentHashMap<Plugin, SyncCallBridge> BRIDGES = new ConcurrentHashMap<>();
+    private final Plugin plg;
+    private final ConcurrentLinkedQueue<Call<?>> calls = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * メインスレッド呼び出し依頼
+     * @param <T> 戻り値型
+     */
+    private static final class Call<T> {
+        private final Supplier<T> task;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        /**
+         * コンストラクタ
+         * @param task_ メインスレッドで実行する処理
+         */
+        private Call(Supplier<T> task_) {
+            task = task_;
+        }
+
+        /**
+         * 実行
+         * 依頼元がキャンセル済みの場合は実行しない
+         */
+        private void execute() {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(task.get());
+            } catch (RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /**
+     * コンストラクタ
+     * @param plg_ プラグインインスタンス
+     */
+    private SyncCallBridge(Plugin plg_) {
+        plg = plg_;
+    }
+
+    /**
+     * プラグイン別の中継インスタンス取得
+     * @param plg_ プラグインインスタンス
+     * @return 中継インスタンス
+     */
+    static SyncCallBridge get(Plugin plg_) {
+        return BRIDGES.computeIfAbsent(plg_, SyncCallBridge::new);
+    }
+
+    /**
+     * メインスレッド呼び出し依頼
+     * メインスレッドから呼び出した場合はその場で実行する
+     * @param <T> 戻り値型
+     * @param task_ メインスレッドで実行する処理
+     * @return 実行結果を受け取るFuture
+     */
+    <T> CompletableFuture<T> call(Supplier<T> task_) {
+        Call<T> c = new Call<>(task_);
+        if (Bukkit.isPrimaryThread()) {
+            c.execute();
+            return c.future;
+        }
+        calls.add(c);
+        pending.incrementAndGet();
+        schedule();
+        return c.future;
+    }
+
+    /**
+     * 次tickのメインスレッド処理の予約
+     * 予約済みの場合は何もしない
+     */
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Bukkit.getScheduler().runTask(plg, this);
+        } catch (RuntimeException ex) {
+            // プラグイン停止後はタスクを登録できないため、残りの依頼を異常完了させる
+            scheduled.set(false);
+            fail(new RejectedExecutionException("plugin is not enabled", ex));
+        }
+    }
+
+    /**
+     * メインスレッド処理
+     * 開始時点で依頼済みの分のみ実行し、処理中に追加された依頼は次tickに持ち越す
+     */
+    @Override
+    public void run() {
+        scheduled.set(false);
+        runPending();
+        if (pending.get() > 0) {
+            schedule();
+        }
+    }
+
+    /**
+     * 依頼済み処理の実行
+     * メインスレッドから呼び出すこと
+     */
+    void runPending() {
+        int n = pending.get();
+        for (int i = 0; i < n; i++) {
+            Call<?> c = calls.poll();
+            if (c == null) {
+                break;
+            }
+            pending.decrementAndGet();
+            c.execute();
+        }
+    }
+
+    /**
+     * 未実行の依頼を全て異常完了させる
+     * @param ex 例外
+     */
+    private void fail(Throwable ex) {
+        Call<?> c;
+        while ((c = calls.poll()) != null) {
+            pending.decrementAndGet();
+            c.future.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * プラグイン停止時の後処理
+     * 未実行の依頼はCancellationExceptionで完了させる
+     * @param plg_ プラグインインスタンス
+     */
+    static void close(Plugin plg_) {
+        SyncCallBridge b = BRIDGES.remove(plg_);
+        if (b != null) {
+            b.fail(new CancellationException("plugin disabled"));
+        }
+    }
+
+    /**
+     * 残処理中の依頼実行
+     * プラグイン停止時の一括停止中はスケジューラが動作しないため、待機ループから呼び出す
+     * @param plg_ プラグインインスタンス
+     */
+    static void runPending(Plugin plg_) {
+        SyncCallBridge b = BRIDGES.get(plg_);
+        if (b != null) {
+            b.runPending();
+        }
+    }
+}
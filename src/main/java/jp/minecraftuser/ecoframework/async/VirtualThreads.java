@@ -0,0 +1,74 @@
+
+package jp.minecraftuser.ecoframework.async;
+
+import java.lang.reflect.Method;
+
+/**
+ * 仮想スレッド起動用ユーティリティ
+ * コンパイルターゲットはJava8のため、Java21以降の仮想スレッドAPIはリフレクションで呼び出す
+ * 実行環境が仮想スレッドに対応していない場合はisSupportedがfalseを返却する
+ * (Java19、20のプレビュー機能無効時のようにAPIが存在しても起動できない場合を含む)
+ * @author ecolight
+ */
+final class VirtualThreads {
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method START;
+
+    static {
+        Method of = null;
+        Method name = null;
+        Method start = null;
+        try {
+            // Thread.ofVirtual().name(String).start(Runnable)
+            // 実装クラスは非公開のため公開インタフェースThread.Builder側のメソッドを使用する
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            of = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class);
+            start = builder.getMethod("start", Runnable.class);
+            // APIが存在してもプレビュー機能無効時は例外となるため、実際に起動できることを確認する
+            Object b = of.invoke(null);
+            b = name.invoke(b, "ecoframework-virtual-thread-probe");
+            ((Thread) start.invoke(b, (Runnable) () -> { })).join();
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+            of = null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            of = null;
+        }
+        OF_VIRTUAL = of;
+        NAME = name;
+        START = start;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 仮想スレッド対応判定
+     * @return 実行環境が仮想スレッドに対応している場合true
+     */
+    static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * 仮想スレッドでの処理開始
+     * @param name_ スレッド名
+     * @param task_ 処理
+     * @return 起動したスレッド
+     * @throws IllegalStateException 仮想スレッドを起動できなかった場合
+     */
+    static Thread start(String name_, Runnable task_) {
+        if (!isSupported()) {
+            throw new IllegalStateException("virtual threads are not supported");
+        }
+        try {
+            Object b = OF_VIRTUAL.invoke(null);
+            b = NAME.invoke(b, name_);
+            return (Thread) START.invoke(b, task_);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+
+package jp.minecraftuser.ecoframework.db;
+
+/**
+ * コネクションプロファイル
+ * 自動コミット、読み取り専用、分離レベルの組み合わせを定義する
+ * 設定はコネクション取得のたびではなく、プロファイル毎のコネクションプール生成時に1度だけ行う
+ * @author ecolight
+ */
+public enum ConnectionProfile {
+    /**
+     * 読み取り専用(自動コミット、READ COMMITTED)
+     * 設定値の参照など、単発の読み取りに使用する
+     */
+    READ_ONLY_FAST(true, true, "TRANSACTION_READ_COMMITTED"),
+    /**
+     * 更新用(BEGIN、commitが必要、READ COMMITTED)
+     * 他トランザクションとの厳密な隔離が不要な更新に使用する
+     */
+    READ_COMMITTED_WRITE(false, false, "TRANSACTION_READ_COMMITTED"),
+    /**
+     * トランザクション用(BEGIN、commitが必要、SERIALIZABLE)
+     * 従来のconnect()と同じ設定
+     */
+    SERIALIZABLE_TX(false, false, "TRANSACTION_SERIALIZABLE");
+
+    private final boolean autoCommit;
+    private final boolean readOnly;
+    private final String isolation;
+
+    /**
+     * コンストラクタ
+     * @param autoCommit_ 自動コミット
+     * @param readOnly_ 読み取り専用
+     * @param isolation_ 分離レベル(HikariCPのtransactionIsolation設定値)
+     */
+    private ConnectionProfile(boolean autoCommit_, boolean readOnly_, String isolation_) {
+        autoCommit = autoCommit_;
+        readOnly = readOnly_;
+        isolation = isolation_;
+    }
+
+    /**
+     * 自動コミット設定取得
+     * @return 自動コミットする場合true
+     */
+    public boolean isAutoCommit() {
+        return autoCommit;
+    }
+
+    /**
+     * 読み取り専用設定取得
+     * @return 読み取り専用の場合true
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * 分離レベル取得
+     * @return HikariCPのtransactionIsolation設定値
+     */
+    public String getIsolation() {
+        return isolation;
+    }
+}
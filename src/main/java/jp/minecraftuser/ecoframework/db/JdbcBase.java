@@ -3,9 +3,14 @@ package jp.minecraftuser.ecoframework.db;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.logging.Logger;
 import jp.minecraftuser.ecoframework.ConfigFrame;
@@ -24,9 +29,11 @@ public abstract class JdbcBase {
     protected final ConfigFrame conf;
     protected boolean justCreated = false;
     protected HikariDataSource hikari;
+    private final EnumMap<ConnectionProfile, HikariDataSource> pools = new EnumMap<>(ConnectionProfile.class);
     protected String user;
     protected String pass;
     protected String addr;
+    protected final StatementCache statements = new StatementCache(isStatementRetained());
 
     public JdbcBase(PluginFrame plg_, String dbname_) throws ClassNotFoundException, SQLException {
         plg = plg_;
@@ -58,6 +65,25 @@ public abstract class JdbcBase {
         // プロパティの取得
         registerProperty();
         
+        // DB接続(既定プロファイルのコネクションプールのみ生成し、他は初回使用時に生成する)
+        hikari = createPool(ConnectionProfile.SERIALIZABLE_TX);
+        pools.put(ConnectionProfile.SERIALIZABLE_TX, hikari);
+
+        // 継承クラスでDB接続の後処理がある場合にはコールする
+        afterConnection();
+        
+        log.info("database connection complete.[" + dbname + "]");
+
+        return;
+    }
+
+    /**
+     * コネクションプール生成処理
+     * 自動コミット、分離レベル等はプール単位で設定し、コネクション取得毎には設定しない
+     * @param profile_ コネクションプロファイル
+     * @return コネクションプール
+     */
+    private HikariDataSource createPool(ConnectionProfile profile_) {
         // HikariCP初期化
         HikariConfig config = null;
         if (p == null) {
@@ -71,53 +97,178 @@ public abstract class JdbcBase {
         
         // データベースパスの設定
         config.setJdbcUrl(connectDB());
+        config.setPoolName(dbname + "-" + profile_.name());
 
         // JdbcDriver固有の設置をコールする
         registerConfig(config);
 
-        // コネクションプーリングで投げるSQL
-        config.setConnectionInitSql("SELECT 1");
-        
         // コネクションリーク検出有効化
         config.setLeakDetectionThreshold(5000);
-        
-        // DB接続
-        hikari = new HikariDataSource(config);
 
-        // 継承クラスでDB接続の後処理がある場合にはコールする
-        afterConnection();
+        // プールサイズ、タイムアウトはJdbcDriver毎の既定値をconfig.ymlの指定で上書きする
+        registerPoolPreset(config, profile_);
+        registerPoolSettings(config, profile_);
+        registerProfile(config, profile_);
+
+        // コネクションプーリングで投げるSQL
+        config.setConnectionInitSql("SELECT 1");
         
-        log.info("database connection complete.[" + dbname + "]");
+        return new HikariDataSource(config);
+    }
 
-        return;
+    /**
+     * config.ymlのコネクションプール設定反映処理
+     * framework-db-pool.[データベース名(.は_に置換)].[プロファイル名].[設定名] に指定がある項目を優先して反映する
+     * framework-db-pool.[データベース名(.は_に置換)].[設定名] は全プロファイルに反映するが、
+     * プールサイズ(maximum-pool-size, minimum-idle)はプロファイル毎にプールが生成されるため従来のconnect()で使用するSERIALIZABLE_TXのみに反映する
+     * @param config HikariCP設定のインスタンスを指定する
+     * @param profile_ コネクションプロファイル
+     */
+    private void registerPoolSettings(HikariConfig config, ConnectionProfile profile_) {
+        Long v;
+        if ((v = getPoolSizeSetting(profile_, "maximum-pool-size")) != null) config.setMaximumPoolSize(v.intValue());
+        if ((v = getPoolSizeSetting(profile_, "minimum-idle")) != null) config.setMinimumIdle(v.intValue());
+        if ((v = getPoolSetting(profile_, "connection-timeout")) != null) config.setConnectionTimeout(v);
+        if ((v = getPoolSetting(profile_, "max-lifetime")) != null) config.setMaxLifetime(v);
+        if ((v = getPoolSetting(profile_, "keepalive-time")) != null) config.setKeepaliveTime(v);
+        if ((v = getPoolSetting(profile_, "leak-detection-threshold")) != null) config.setLeakDetectionThreshold(v);
+    }
+
+    /**
+     * config.ymlのコネクションプール設定値取得
+     * プロファイル別の指定が無い場合はデータベース単位の指定を返却する
+     * @param profile_ コネクションプロファイル
+     * @param item_ 設定名
+     * @return 設定値(未指定の場合null)
+     */
+    private Long getPoolSetting(ConnectionProfile profile_, String item_) {
+        Long v = getLongSetting("framework-db-pool", getProfileKey(profile_) + "." + item_);
+        return (v != null) ? v : getLongSetting("framework-db-pool", item_);
+    }
+
+    /**
+     * config.ymlのプールサイズ設定値取得
+     * データベース単位の指定はSERIALIZABLE_TXのプールにのみ適用し、他のプロファイルのプールで上限が重複して確保されないようにする
+     * @param profile_ コネクションプロファイル
+     * @param item_ 設定名
+     * @return 設定値(未指定の場合null)
+     */
+    private Long getPoolSizeSetting(ConnectionProfile profile_, String item_) {
+        if (profile_ == ConnectionProfile.SERIALIZABLE_TX) {
+            return getPoolSetting(profile_, item_);
+        }
+        return getLongSetting("framework-db-pool", getProfileKey(profile_) + "." + item_);
+    }
+
+    /**
+     * config.ymlのプロファイル別設定キー取得
+     * @param profile_ コネクションプロファイル
+     * @return プロファイル名(小文字、_は-に置換)
+     */
+    private static String getProfileKey(ConnectionProfile profile_) {
+        return profile_.name().toLowerCase().replace('_', '-');
+    }
+
+    /**
+     * config.ymlのデータベース別設定値取得(Long値)
+     * [セクション名].[データベース名(.は_に置換)].[設定名] の値を返却する
+     * @param section_ セクション名
+     * @param item_ 設定名
+     * @return 設定値(未指定の場合null)
+     */
+    protected Long getLongSetting(String section_, String item_) {
+        if (conf == null) {
+            return null;
+        }
+        String key = section_ + "." + dbname.replace('.', '_') + "." + item_;
+        conf.registerLong(key, true);
+        return conf.getLong(key);
+    }
+
+    /**
+     * config.ymlのデータベース別設定値取得(文字列)
+     * [セクション名].[データベース名(.は_に置換)].[設定名] の値を返却する
+     * @param section_ セクション名
+     * @param item_ 設定名
+     * @return 設定値(未指定の場合null)
+     */
+    protected String getStringSetting(String section_, String item_) {
+        if (conf == null) {
+            return null;
+        }
+        String key = section_ + "." + dbname.replace('.', '_') + "." + item_;
+        conf.registerString(key, true);
+        return conf.getString(key);
+    }
+
+    /**
+     * プロファイル別コネクションプール取得
+     * 未生成の場合は生成する
+     * @param profile_ コネクションプロファイル
+     * @return コネクションプール
+     * @throws SQLException
+     */
+    private synchronized HikariDataSource getPool(ConnectionProfile profile_) throws SQLException {
+        if (hikari == null) {
+            throw new SQLException("database is closed.[" + dbname + "]");
+        }
+        HikariDataSource pool = pools.get(profile_);
+        if (pool == null) {
+            log.info("create connection pool.[" + dbname + ":" + profile_.name() + "]");
+            pool = createPool(profile_);
+            pools.put(profile_, pool);
+        }
+        return pool;
     }
 
     /**
      * コネクションの取得
+     * SERIALIZABLE_TXプロファイル(自動コミット無効、SERIALIZABLE)のコネクションを取得する
      * @return コネクションプールから取得したコネクションを返却する
      * @throws ClassNotFoundException
      * @throws SQLException 
      */
     public Connection connect() throws SQLException  {
-        log.info("Start connecting database.[" + dbname + "]");
-        // DB接続
-        Connection con = hikari.getConnection();
-        try {
-            con.setAutoCommit(false); // 悩ましいが必ずBEGIN, commitする事にする
-            owner = true;
+        return connect(ConnectionProfile.SERIALIZABLE_TX);
+    }
 
-            // デフォルトではSERIALIZABLE指定とする。共用DBでパフォーマンスの検討をする場合は変更してから使用すること
-            setTransactionIsolationSerializable(con);
-        } catch (Exception e) {
-            // コネクションの取得は出来ているので、ログだけしてコネクションを返す
-            log.warning(e.getLocalizedMessage());
-            e.printStackTrace();
-        }
-        log.info("database get connection complete.[" + dbname + "]");
+    /**
+     * プロファイル指定のコネクションの取得
+     * 自動コミット無効のプロファイルの場合は呼び出し元でcommitすること
+     * @param profile_ コネクションプロファイル
+     * @return コネクションプールから取得したコネクションを返却する
+     * @throws SQLException 
+     */
+    public Connection connect(ConnectionProfile profile_) throws SQLException  {
+        log.fine("Start connecting database.[" + dbname + ":" + profile_.name() + "]");
+        // DB接続
+        Connection con = getPool(getPoolProfile(profile_)).getConnection();
+        owner = true;
+        log.fine("database get connection complete.[" + dbname + ":" + profile_.name() + "]");
 
         return con;
     }
 
+    /**
+     * 単項操作用ステートメントの保持モード判定
+     * JDBCドライバ側にステートメントキャッシュが無い場合は継承してtrueを返却し、物理コネクション単位で保持させること
+     * インスタンス生成中に呼び出されるため、継承クラスのフィールドを参照しないこと
+     * @return 物理コネクション単位でステートメントを保持する場合true
+     */
+    protected boolean isStatementRetained() {
+        return false;
+    }
+
+    /**
+     * 使用するコネクションプールのプロファイル取得
+     * 複数のプロファイルで同じコネクションプールを共有する場合は継承してオーバーライドすること
+     * @param profile_ コネクションプロファイル
+     * @return コネクションプールを生成、取得するプロファイル
+     */
+    protected ConnectionProfile getPoolProfile(ConnectionProfile profile_) {
+        return profile_;
+    }
+
     /**
      * DB接続前処理
      */
@@ -165,6 +316,28 @@ public abstract class JdbcBase {
         // optional method
     }
 
+    /**
+     * コネクションプール既定値設定処理
+     * JdbcDriver毎のプールサイズ、タイムアウト等の既定値を設定する(config.ymlの指定で上書きされる)
+     * @param config HikariCP設定のインスタンスを指定する
+     * @param profile_ コネクションプロファイル
+     */
+    protected void registerPoolPreset(HikariConfig config, ConnectionProfile profile_) {
+        // optional method
+    }
+
+    /**
+     * コネクションプロファイル設定処理
+     * JDBCドライバが対応しない設定がある場合は継承してオーバーライドすること
+     * @param config HikariCP設定のインスタンスを指定する
+     * @param profile_ コネクションプロファイル
+     */
+    protected void registerProfile(HikariConfig config, ConnectionProfile profile_) {
+        config.setAutoCommit(profile_.isAutoCommit());
+        config.setReadOnly(profile_.isReadOnly());
+        config.setTransactionIsolation(profile_.getIsolation());
+    }
+
     /**
      * DB接続のためのコネクション文字列指定
      * @return DB接続指示文字列
@@ -177,10 +350,14 @@ public abstract class JdbcBase {
      * 本クラスをインスタンス化した場合破棄するタイミングで必ず呼ぶこと。finalizeには頼らない。
      * 自分が生成したDBのみ処理する
      */
-    public void close() {
+    public synchronized void close() {
         if (owner) {
+            statements.clear();
             if (hikari != null) {
-                hikari.close();
+                for (HikariDataSource pool : pools.values()) {
+                    pool.close();
+                }
+                pools.clear();
                 hikari = null;
             } else {
                 log.warning("["+dbname+"] database が null なのでクローズをスキップしました");
@@ -190,6 +367,32 @@ public abstract class JdbcBase {
         }
     }
     
+    /**
+     * コネクションプール統計取得
+     * 生成済みのプロファイル別コネクションプールの状況を返却する
+     * @return コネクションプール統計(DBクローズ済みの場合は空)
+     */
+    public synchronized List<PoolStats> getPoolStats() {
+        List<PoolStats> list = new ArrayList<>();
+        for (Map.Entry<ConnectionProfile, HikariDataSource> e : pools.entrySet()) {
+            HikariPoolMXBean mx = e.getValue().getHikariPoolMXBean();
+            if (mx == null) {
+                continue;
+            }
+            list.add(new PoolStats(e.getKey(), mx.getActiveConnections(), mx.getIdleConnections(),
+                    mx.getTotalConnections(), mx.getThreadsAwaitingConnection(), e.getValue().getMaximumPoolSize()));
+        }
+        return list;
+    }
+
+    /**
+     * 単項操作用ステートメントキャッシュ取得
+     * @return ステートメントキャッシュ
+     */
+    public StatementCache getStatementCache() {
+        return statements;
+    }
+
     /**
      * DBが作成直後かどうかを返却する
      * @return trueの場合作成直後
@@ -36,19 +36,45 @@ public class JdbcMySQL extends JdbcBase {
         // ユーザーパス設定
         config.addDataSourceProperty("user", user);
         config.addDataSourceProperty("password", pass);
-        // とりあえずキャッシュ系設定やサーバーサイドプリペアドステートメント設定は省略
-        // 必要あれば継承してオーバーライドすること
-        // config.addDataSourceProperty("cachePrepStmts", "true");
-        // config.addDataSourceProperty("prepStmtCacheSize", "250");
-        // config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
-        // config.addDataSourceProperty("useServerPrepStmts", "true");
+        // プリペアドステートメントのキャッシュ、サーバーサイドプリペアドステートメント設定
+        // DatabaseFrameの単項操作はコネクションをプールへ返却するたびにステートメントが破棄されるため、
+        // 物理コネクション単位での再利用はドライバのキャッシュに任せる
+        // 変更が必要な場合は継承してオーバーライドすること
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize", "250");
+        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        config.addDataSourceProperty("useServerPrepStmts", "true");
+    }
+
+    @Override
+    protected void registerPoolPreset(HikariConfig config, ConnectionProfile profile_) {
+        // プロファイル毎にプールが生成されるため、HikariCP推奨の(コア数 * 2 + 1)は従来のconnect()で使用するプールにのみ割り当て、
+        // 必要時に生成される他のプロファイルのプールは小さな固定上限とする
+        // 最大寿命はサーバー側のwait_timeoutより短くする
+        switch (profile_) {
+            case READ_ONLY_FAST:
+                config.setMaximumPoolSize(4);
+                config.setMinimumIdle(1);
+                break;
+            case READ_COMMITTED_WRITE:
+                config.setMaximumPoolSize(2);
+                config.setMinimumIdle(0);
+                break;
+            default:
+                config.setMaximumPoolSize(Runtime.getRuntime().availableProcessors() * 2 + 1);
+                config.setMinimumIdle(2);
+                break;
+        }
+        config.setConnectionTimeout(10000);
+        config.setMaxLifetime(1800000);
+        config.setKeepaliveTime(300000);
     }
 
     @Override
     public boolean constans(String table_) throws SQLException {
         PreparedStatement prep = null;
         ResultSet rs = null;
-        Connection con = connect();
+        Connection con = connect(ConnectionProfile.READ_ONLY_FAST);
         boolean result = false;
         try {
             prep = con.prepareStatement("SELECT * FROM information_schema.columns WHERE table_schema LIKE '%" + dbname + "%' AND table_name = ?");
@@ -69,7 +95,7 @@ public class JdbcMySQL extends JdbcBase {
     public boolean constans(String table_, String column_) throws SQLException {
         PreparedStatement prep;
         ResultSet rs;
-        Connection con = connect();
+        Connection con = connect(ConnectionProfile.READ_ONLY_FAST);
         boolean result;
         try {
             prep = con.prepareStatement("SELECT * FROM information_schema.columns WHERE table_name = ? AND column_name = ?");
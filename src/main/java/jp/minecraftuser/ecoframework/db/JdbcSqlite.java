@@ -3,10 +3,19 @@ package jp.minecraftuser.ecoframework.db;
 
 import com.zaxxer.hikari.HikariConfig;
 import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import jp.minecraftuser.ecoframework.PluginFrame;
 
 /**
@@ -15,10 +24,252 @@ import jp.minecraftuser.ecoframework.PluginFrame;
  */
 public class JdbcSqlite extends JdbcBase {
     private String dbpath;
+    // 書き込み用コネクションの順番待ち(到着順)
+    private final Semaphore writer = new Semaphore(1, true);
+    // 以下は書き込み用コネクションの割当状況(thisで排他)
+    private Thread writerOwner = null;
+    private Connection writerCon = null;
+    private int writerDepth = 0;
+
     public JdbcSqlite(PluginFrame plg_, String dbname_) throws ClassNotFoundException, SQLException {
         super(plg_, dbname_);
     }
 
+    /**
+     * プロファイル指定のコネクションの取得
+     * 読み取り専用プロファイルは読み取り用コネクションプールから取得し、書き込みを待たずに並行して処理する
+     * 書き込み可能なプロファイルは単一の書き込み用コネクションを到着順に割り当てる(SQLITE_BUSYを発生させない)
+     * 同一スレッドで割当済みの場合は読み取り専用プロファイルも含めて同じコネクションを返却する(自スレッドの未コミットの更新を参照できる)
+     * commit/rollbackは同一スレッドで使用中のラッパーが1つだけの場合に反映し、それ以外は使用中の他のラッパーに委ねる
+     * unwrap、ResultSet.getStatement経由で取得したコネクションはcloseしないこと(書き込み用コネクションの割当が解除されない)
+     * @param profile_ コネクションプロファイル
+     * @return コネクション
+     * @throws SQLException 
+     */
+    @Override
+    public Connection connect(ConnectionProfile profile_) throws SQLException {
+        Thread t = Thread.currentThread();
+        synchronized (this) {
+            if (writerOwner == t) {
+                writerDepth++;
+                return writerView(writerCon);
+            }
+        }
+        if (profile_.isReadOnly()) {
+            return super.connect(profile_);
+        }
+        Long timeout = getLongSetting("framework-db-pool", "connection-timeout");
+        try {
+            if (!writer.tryAcquire((timeout == null) ? 30000 : timeout, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("writer connection is not available.[" + dbname + "]");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for writer connection.[" + dbname + "]", ex);
+        }
+        Connection con;
+        try {
+            con = super.connect(profile_);
+        } catch (SQLException | RuntimeException ex) {
+            writer.release();
+            throw ex;
+        }
+        synchronized (this) {
+            writerOwner = t;
+            writerCon = con;
+            writerDepth = 1;
+        }
+        return writerView(con);
+    }
+
+    /**
+     * 書き込み用コネクションの割当解除
+     * @return 最も外側の割当が解除された場合true
+     */
+    private synchronized boolean releaseWriter() {
+        writerDepth--;
+        if (writerDepth > 0) {
+            return false;
+        }
+        writerOwner = null;
+        writerCon = null;
+        return true;
+    }
+
+    /**
+     * 書き込み用コネクションの共有判定
+     * @return 同一スレッドで使用中のラッパーが複数ある場合true
+     */
+    private synchronized boolean isWriterShared() {
+        return writerDepth > 1;
+    }
+
+    /**
+     * 書き込み用コネクションのラッパー生成
+     * @param con_ 書き込み用コネクション
+     * @return ラッパー
+     */
+    private Connection writerView(Connection con_) {
+        return (Connection) Proxy.newProxyInstance(JdbcSqlite.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new WriterHandler(con_));
+    }
+
+    /**
+     * 書き込み用コネクションのラッパー処理
+     * closeで割当を解除し、最後に残ったラッパーのcloseでコネクションプールへ返却する
+     * 生成したステートメントのgetConnectionはラッパーを返却する
+     */
+    private final class WriterHandler implements InvocationHandler {
+        private final Connection con;
+        private boolean closed = false;
+
+        /**
+         * コンストラクタ
+         * @param con_ 書き込み用コネクション
+         */
+        private WriterHandler(Connection con_) {
+            con = con_;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "writer[" + dbname + "]" + con;
+                case "isClosed":
+                    return closed || con.isClosed();
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        if (releaseWriter()) {
+                            try {
+                                // 保持中のステートメントは物理コネクションで実行されプールの未コミット検出を経由しないため、
+                                // 未コミットの更新は返却前に明示的にロールバックする
+                                if (!con.getAutoCommit()) {
+                                    con.rollback();
+                                }
+                            } finally {
+                                try {
+                                    con.close();
+                                } finally {
+                                    writer.release();
+                                }
+                            }
+                        }
+                    }
+                    return null;
+                case "commit":
+                case "rollback":
+                case "setAutoCommit":
+                    // 生成順ではなく呼び出し時点で判定し、使用中の他のラッパーがある場合はそちらに委ねる
+                    // (最後に残ったラッパーのcommitは必ず反映し、未コミットのままプールへ返却しない)
+                    if (!closed && isWriterShared()) {
+                        return null;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("connection is closed.[" + dbname + "]");
+            }
+            Object ret;
+            try {
+                ret = method.invoke(con, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+            // ステートメント経由でプール管理下のコネクションが取得、closeされないようにする
+            if ((ret instanceof Statement) && method.getReturnType().isInterface()) {
+                return Proxy.newProxyInstance(JdbcSqlite.class.getClassLoader(),
+                        new Class<?>[]{method.getReturnType()}, new StatementHandler((Statement) ret, (Connection) proxy));
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * 書き込み用コネクションで生成したステートメントのラッパー処理
+     * getConnectionは書き込み用コネクションのラッパーを返却する
+     */
+    private static final class StatementHandler implements InvocationHandler {
+        private final Statement stmt;
+        private final Connection view;
+
+        /**
+         * コンストラクタ
+         * @param stmt_ ステートメント
+         * @param view_ 書き込み用コネクションのラッパー
+         */
+        private StatementHandler(Statement stmt_, Connection view_) {
+            stmt = stmt_;
+            view = view_;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "getConnection":
+                    return view;
+                default:
+                    break;
+            }
+            try {
+                return method.invoke(stmt, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+
+    /**
+     * コネクションプール統計取得
+     * 書き込み用コネクションの順番待ち数を取得待ちスレッド数に含める
+     * @return コネクションプール統計
+     */
+    @Override
+    public synchronized List<PoolStats> getPoolStats() {
+        List<PoolStats> list = super.getPoolStats();
+        for (int i = 0; i < list.size(); i++) {
+            PoolStats s = list.get(i);
+            if (s.getProfile() == ConnectionProfile.SERIALIZABLE_TX) {
+                list.set(i, new PoolStats(s.getProfile(), s.getActive(), s.getIdle(), s.getTotal(),
+                        s.getWaiting() + writer.getQueueLength(), s.getMax()));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 使用するコネクションプールのプロファイル取得
+     * SQLiteは常にSERIALIZABLEで動作し書き込みは同時に1つしか行えないため、書き込み可能なプロファイルは全て1接続の書き込み用プールを共有する
+     * (書き込み用プールが複数あるとSQLITE_BUSYが発生する)
+     * @param profile_ コネクションプロファイル
+     * @return コネクションプールを生成、取得するプロファイル
+     */
+    @Override
+    protected ConnectionProfile getPoolProfile(ConnectionProfile profile_) {
+        return profile_.isReadOnly() ? profile_ : ConnectionProfile.SERIALIZABLE_TX;
+    }
+
+    /**
+     * 単項操作用ステートメントの保持モード判定
+     * SQLiteのJDBCドライバにはステートメントキャッシュが無いため、物理コネクション単位で保持する
+     * @return 常にtrue
+     */
+    @Override
+    protected boolean isStatementRetained() {
+        return true;
+    }
+
     @Override
     protected void preConnection() {
         if (!plg.getDataFolder().exists()) plg.getDataFolder().mkdir();
@@ -38,6 +289,62 @@ public class JdbcSqlite extends JdbcBase {
     protected void registerConfig(HikariConfig config) {
         // エンコーディング設定
         config.addDataSourceProperty("foreign_keys", "true");
+        // 性能設定(接続時にPRAGMAとして適用される)
+        // WALと併用する場合、synchronous=NORMALでもコミット済みデータはアプリケーションのクラッシュで失われない(電源断時は直近のコミットが失われうる)
+        config.addDataSourceProperty("synchronous", getSetting("synchronous", "NORMAL"));
+        config.addDataSourceProperty("temp_store", getSetting("temp-store", "MEMORY"));
+        config.addDataSourceProperty("cache_size", Long.toString(getSetting("cache-size", -16384L)));
+        config.addDataSourceProperty("mmap_size", Long.toString(getSetting("mmap-size", 268435456L)));
+        config.addDataSourceProperty("busy_timeout", Long.toString(getSetting("busy-timeout", 5000L)));
+    }
+
+    /**
+     * SQLite性能設定取得(文字列)
+     * @param item_ 設定名
+     * @param default_ 未指定時の値
+     * @return 設定値
+     */
+    private String getSetting(String item_, String default_) {
+        String v = getStringSetting("framework-sqlite", item_);
+        return (v == null) ? default_ : v;
+    }
+
+    /**
+     * SQLite性能設定取得(Long値)
+     * @param item_ 設定名
+     * @param default_ 未指定時の値
+     * @return 設定値
+     */
+    private long getSetting(String item_, long default_) {
+        Long v = getLongSetting("framework-sqlite", item_);
+        return (v == null) ? default_ : v;
+    }
+
+    @Override
+    protected void registerPoolPreset(HikariConfig config, ConnectionProfile profile_) {
+        // ローカルファイルのため接続の維持、再接続は不要
+        config.setMaxLifetime(0);
+        config.setMinimumIdle(1);
+        if (profile_.isReadOnly()) {
+            config.setMaximumPoolSize(Math.min(4, Runtime.getRuntime().availableProcessors()));
+        }
+    }
+
+    @Override
+    protected void registerProfile(HikariConfig config, ConnectionProfile profile_) {
+        // SQLiteは常にSERIALIZABLEで動作するため分離レベルは指定しない
+        // 読み取り専用はコネクション生成後に変更できないため、オープンモード(SQLITE_OPEN_READONLY)で指定する
+        config.setAutoCommit(profile_.isAutoCommit());
+        if (profile_.isReadOnly()) {
+            config.addDataSourceProperty("open_mode", "1");
+        } else {
+            // ジャーナルモードはDBファイルに記録されるため、書き込み用の接続でのみ指定する
+            // WALでは読み取りが書き込みを待たない
+            config.addDataSourceProperty("journal_mode", getSetting("journal-mode", "WAL"));
+            // 書き込みは同時に1つしか行えないため、config.ymlの指定に関わらず1接続とする
+            // (書き込み可能なプロファイルはgetPoolProfileでこのプールに集約し、同一スレッドの入れ子の取得はconnectで同じ接続を返却する)
+            config.setMaximumPoolSize(1);
+        }
     }
 
     @Override
@@ -55,7 +362,7 @@ public class JdbcSqlite extends JdbcBase {
     public boolean constans(String table_) throws SQLException {
         PreparedStatement prep = null;
         ResultSet rs = null;
-        Connection con = connect();
+        Connection con = connect(ConnectionProfile.READ_ONLY_FAST);
         boolean result = false;
         try {
             prep = con.prepareStatement("SELECT name FROM sqlite_master WHERE type = 'table' AND name = ? ;");
@@ -76,10 +383,10 @@ public class JdbcSqlite extends JdbcBase {
     public boolean constans(String table_, String column_) throws SQLException {
         PreparedStatement prep;
         ResultSet rs;
-        Connection con = connect();
+        Connection con = connect(ConnectionProfile.READ_ONLY_FAST);
         boolean result;
         try {
-            prep = connect().prepareStatement("SELECT sql FROM sqlite_master WHERE type = 'table' AND name = ? ;");
+            prep = con.prepareStatement("SELECT sql FROM sqlite_master WHERE type = 'table' AND name = ? ;");
             prep.setString(1, table_);
             rs = prep.executeQuery();
             result = rs.next();
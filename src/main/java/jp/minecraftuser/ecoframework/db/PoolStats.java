@@ -0,0 +1,82 @@
+
+package jp.minecraftuser.ecoframework.db;
+
+/**
+ * コネクションプール統計
+ * 取得時点の値を保持する
+ * @author ecolight
+ */
+public final class PoolStats {
+    private final ConnectionProfile profile;
+    private final int active;
+    private final int idle;
+    private final int total;
+    private final int waiting;
+    private final int max;
+
+    /**
+     * コンストラクタ
+     * @param profile_ コネクションプロファイル
+     * @param active_ 使用中コネクション数
+     * @param idle_ 待機中コネクション数
+     * @param total_ 総コネクション数
+     * @param waiting_ コネクション取得待ちスレッド数
+     * @param max_ 最大コネクション数
+     */
+    public PoolStats(ConnectionProfile profile_, int active_, int idle_, int total_, int waiting_, int max_) {
+        profile = profile_;
+        active = active_;
+        idle = idle_;
+        total = total_;
+        waiting = waiting_;
+        max = max_;
+    }
+
+    /**
+     * コネクションプロファイル取得
+     * @return コネクションプロファイル
+     */
+    public ConnectionProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * 使用中コネクション数取得
+     * @return 使用中コネクション数
+     */
+    public int getActive() {
+        return active;
+    }
+
+    /**
+     * 待機中コネクション数取得
+     * @return 待機中コネクション数
+     */
+    public int getIdle() {
+        return idle;
+    }
+
+    /**
+     * 総コネクション数取得
+     * @return 総コネクション数
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * コネクション取得待ちスレッド数取得
+     * @return コネクション取得待ちスレッド数
+     */
+    public int getWaiting() {
+        return waiting;
+    }
+
+    /**
+     * 最大コネクション数取得
+     * @return 最大コネクション数
+     */
+    public int getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,305 @@
+
+package jp.minecraftuser.ecoframework.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 単項操作用プリペアドステートメントキャッシュ
+ * (操作, テーブル, キーカラム, 値カラム)をキーにSQL文を1度だけ生成する
+ * 保持モードでは物理コネクション単位でコンパイル済みステートメントを保持し、コネクションプールへの返却を跨いで再利用する
+ * 保持モード以外ではbeginで再利用を開始したコネクションに限り保持し(releaseで必ず解除すること)、
+ * 再利用を開始していないコネクションのステートメントはfinishで都度closeする(返却後の再利用はJDBCドライバ側のキャッシュに任せる)
+ * 1つのコネクションを複数スレッドから同時に使用しないこと
+ * @author ecolight
+ */
+public final class StatementCache {
+    /**
+     * 操作種別
+     */
+    public enum Op {
+        SELECT,         // SELECT 値カラム FROM テーブル WHERE キーカラム = ?
+        UPDATE,         // UPDATE テーブル SET 値カラム = ? WHERE キーカラム = ?
+        INSERT,         // INSERT INTO テーブル VALUES(?, ?)
+        INSERT_COLUMN,  // INSERT INTO テーブル(キーカラム, 値カラム) VALUES(?, ?)
+    }
+
+    private final ConcurrentHashMap<Key, String> sqls = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Connection, Scope> statements = new ConcurrentHashMap<>();
+    private final boolean retain;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * キャッシュキー
+     */
+    private static final class Key {
+        private final Op op;
+        private final String table;
+        private final String keycolumn;
+        private final String valcolumn;
+
+        /**
+         * コンストラクタ
+         * @param op_ 操作種別
+         * @param table_ テーブル名
+         * @param keycolumn_ キーカラム名
+         * @param valcolumn_ 値カラム名
+         */
+        private Key(Op op_, String table_, String keycolumn_, String valcolumn_) {
+            op = op_;
+            table = table_;
+            keycolumn = keycolumn_;
+            valcolumn = valcolumn_;
+        }
+
+        /**
+         * SQL文生成
+         * @return SQL文
+         */
+        private String build() {
+            switch (op) {
+                case SELECT:
+                    return "SELECT " + valcolumn + " FROM " + table + " WHERE " + keycolumn + " = ?";
+                case UPDATE:
+                    return "UPDATE " + table + " SET " + valcolumn + " = ? WHERE " + keycolumn + " = ?";
+                case INSERT:
+                    return "INSERT INTO " + table + " VALUES(?, ?)";
+                default:
+                    return "INSERT INTO " + table + "(" + keycolumn + ", " + valcolumn + ") VALUES(?, ?)";
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) obj;
+            return op == k.op && table.equals(k.table) && Objects.equals(keycolumn, k.keycolumn) && Objects.equals(valcolumn, k.valcolumn);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(op, table, keycolumn, valcolumn);
+        }
+    }
+
+    /**
+     * コネクション単位の保持中ステートメント
+     */
+    private static final class Scope {
+        private final Map<Key, PreparedStatement> byKey = new HashMap<>();
+        // finishでの保持判定用(ステートメントのインスタンス単位)
+        private final Map<PreparedStatement, Key> owned = new IdentityHashMap<>();
+
+        /**
+         * 保持中ステートメント取得
+         * @param k_ キャッシュキー
+         * @return ステートメント(未保持、close済みの場合null)
+         * @throws SQLException
+         */
+        private PreparedStatement get(Key k_) throws SQLException {
+            PreparedStatement prep = byKey.get(k_);
+            if ((prep != null) && prep.isClosed()) {
+                byKey.remove(k_);
+                owned.remove(prep);
+                return null;
+            }
+            return prep;
+        }
+
+        /**
+         * ステートメント保持
+         * @param k_ キャッシュキー
+         * @param prep_ ステートメント
+         */
+        private void put(Key k_, PreparedStatement prep_) {
+            PreparedStatement old = byKey.put(k_, prep_);
+            if (old != null) {
+                owned.remove(old);
+            }
+            owned.put(prep_, k_);
+        }
+
+        /**
+         * 全ステートメント破棄
+         */
+        private void closeAll() {
+            for (PreparedStatement prep : byKey.values()) {
+                try {
+                    prep.close();
+                } catch (SQLException ex) {
+                    // クローズ済みの場合は無視する
+                }
+            }
+            byKey.clear();
+            owned.clear();
+        }
+    }
+
+    /**
+     * コンストラクタ
+     * @param retain_ trueの場合は物理コネクション単位で常にステートメントを保持する(JDBCドライバ側にステートメントキャッシュが無い場合に使用する)
+     */
+    public StatementCache(boolean retain_) {
+        retain = retain_;
+    }
+
+    /**
+     * キャッシュ対象のコネクション取得
+     * 保持モードではコネクションプールのラッパーを外した物理コネクションを返却する
+     * @param con_ コネクション
+     * @return キャッシュ対象のコネクション
+     * @throws SQLException
+     */
+    private Connection resolve(Connection con_) throws SQLException {
+        return retain ? con_.unwrap(Connection.class) : con_;
+    }
+
+    /**
+     * ステートメント再利用開始
+     * 同一コネクションで単項操作を繰り返す場合に使用し、コネクションのclose前にreleaseを呼び出すこと
+     * 保持モードでは常に再利用するため何もしない
+     * @param con_ コネクション
+     */
+    public void begin(Connection con_) {
+        if (!retain) {
+            statements.putIfAbsent(con_, new Scope());
+        }
+    }
+
+    /**
+     * ステートメント取得
+     * 再利用対象のコネクションで同じ操作を行ったことがある場合はパラメータをクリアして再利用する
+     * 保持モードでは物理コネクションでステートメントを生成するため、コネクションプールへの返却時にcloseされない
+     * 使用後はfinishを呼び出すこと
+     * @param con_ コネクション
+     * @param op_ 操作種別
+     * @param table_ テーブル名
+     * @param keycolumn_ キーカラム名(INSERTの場合はnull)
+     * @param valcolumn_ 値カラム名(INSERTの場合はnull)
+     * @return プリペアドステートメント
+     * @throws SQLException
+     */
+    public PreparedStatement prepare(Connection con_, Op op_, String table_, String keycolumn_, String valcolumn_) throws SQLException {
+        Key k = new Key(op_, table_, keycolumn_, valcolumn_);
+        Connection con = resolve(con_);
+        Scope scope = statements.get(con);
+        if ((scope == null) && retain) {
+            // 破棄された物理コネクションの保持分を除いてから追加する
+            purge();
+            scope = statements.computeIfAbsent(con, c -> new Scope());
+        }
+        PreparedStatement prep = (scope == null) ? null : scope.get(k);
+        if (prep != null) {
+            prep.clearParameters();
+            hits.incrementAndGet();
+            return prep;
+        }
+        prep = con.prepareStatement(sqls.computeIfAbsent(k, Key::build));
+        if (scope != null) {
+            scope.put(k, prep);
+        }
+        misses.incrementAndGet();
+        return prep;
+    }
+
+    /**
+     * ステートメント使用終了
+     * 再利用対象外のステートメントの場合はcloseする
+     * @param con_ コネクション
+     * @param prep_ prepareで取得したステートメント
+     * @throws SQLException
+     */
+    public void finish(Connection con_, PreparedStatement prep_) throws SQLException {
+        Scope scope = statements.get(resolve(con_));
+        if ((scope == null) || !scope.owned.containsKey(prep_)) {
+            prep_.close();
+        }
+    }
+
+    /**
+     * 保持中のステートメント破棄
+     * 再利用は継続する スキーマ変更を行う前などに呼び出す
+     * @param con_ コネクション
+     * @throws SQLException
+     */
+    public void invalidate(Connection con_) throws SQLException {
+        Scope scope = statements.get(resolve(con_));
+        if (scope != null) {
+            scope.closeAll();
+        }
+    }
+
+    /**
+     * ステートメント再利用終了
+     * 保持中のステートメントを破棄する(保持モードでは何もしない)
+     * @param con_ コネクション
+     */
+    public void release(Connection con_) {
+        if (retain) {
+            return;
+        }
+        Scope scope = statements.remove(con_);
+        if (scope != null) {
+            scope.closeAll();
+        }
+    }
+
+    /**
+     * close済みの物理コネクションの保持分を破棄する
+     */
+    private void purge() throws SQLException {
+        for (Connection con : statements.keySet()) {
+            if (con.isClosed()) {
+                statements.remove(con);
+            }
+        }
+    }
+
+    /**
+     * 全キャッシュ破棄
+     */
+    public void clear() {
+        for (Scope scope : statements.values()) {
+            scope.closeAll();
+        }
+        statements.clear();
+        sqls.clear();
+    }
+
+    /**
+     * 再利用中のコネクション数取得
+     * @return beginしてreleaseしていないコネクション数(保持モードではステートメントを保持している物理コネクション数)
+     */
+    public int getScopeCount() {
+        return statements.size();
+    }
+
+    /**
+     * 再利用回数取得
+     * @return ステートメントを再利用した回数の累計
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * 生成回数取得
+     * @return ステートメントを新たに生成した回数の累計
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+}
@@ -3,6 +3,7 @@ package jp.minecraftuser.ecoframework.plugin;
 import jp.minecraftuser.ecoframework.CommandFrame;
 import jp.minecraftuser.ecoframework.ConfigFrame;
 import jp.minecraftuser.ecoframework.PluginFrame;
+import jp.minecraftuser.ecoframework.async.AsyncWorkerPool;
 import jp.minecraftuser.ecoframework.store.PlayerDataFileStoreListener;
 
 public class EcoFramework extends PluginFrame {
@@ -22,6 +23,8 @@ public class EcoFramework extends PluginFrame {
     @Override
     public void onDisable()
     {
+        // プレイヤーデータ保存中の非同期フレームがあれば残処理させてからDBを止めるため先に後処理する
+        disable();
         // DB動作していたら止める
         EcoFrameworkConfig efconf = (EcoFrameworkConfig) getDefaultConfig();
         if (efconf.dbuse) {
@@ -29,7 +32,8 @@ public class EcoFramework extends PluginFrame {
                 efconf.store.close();
             }
         }
-        disable();
+        // 利用プラグインは全て停止済みのため共有ワーカープールを停止する
+        AsyncWorkerPool.shutdown();
     }
 
     /**
@@ -45,6 +49,11 @@ public class EcoFramework extends PluginFrame {
         conf.registerString("userdatadb.server");
         conf.registerString("userdatadb.user");
         conf.registerString("userdatadb.pass");
+        // 共有ワーカープールのスレッド数(未指定の場合はCPUコア数から決定する)
+        // 本体のリスナーが生成する非同期フレームより先に設定しておく
+        conf.registerLong("framework-shared-workers", true);
+        Long workers = conf.getLong("framework-shared-workers");
+        AsyncWorkerPool.configure((workers == null) ? 0 : workers.intValue());
         registerPluginConfig(conf);
     }
 
@@ -69,6 +78,11 @@ public class EcoFramework extends PluginFrame {
         cmd.addCommand(new EcoFrameworkPermissionsCommand(this, "permissions"));
         cmd.addCommand(new EcoFrameworkAcceptCommand(this, "accept"));
         cmd.addCommand(new EcoFrameworkCancelCommand(this, "cancel"));
+        CommandFrame stats = new EcoFrameworkStatsCommand(this, "stats");
+        stats.addCommand(new EcoFrameworkStatsAsyncCommand(this, "async"));
+        stats.addCommand(new EcoFrameworkStatsDbCommand(this, "db"));
+        cmd.addCommand(stats);
+        cmd.addCommand(new EcoFrameworkDeadLetterCommand(this, "deadletter"));
         registerPluginCommand(cmd);
     }
 }
\ No newline at end of file
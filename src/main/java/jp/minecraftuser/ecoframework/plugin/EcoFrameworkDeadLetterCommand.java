@@ -0,0 +1,92 @@
+package jp.minecraftuser.ecoframework.plugin;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import jp.minecraftuser.ecoframework.CommandFrame;
+import jp.minecraftuser.ecoframework.PluginFrame;
+import jp.minecraftuser.ecoframework.Utl;
+import jp.minecraftuser.ecoframework.async.AsyncFrame;
+import jp.minecraftuser.ecoframework.async.AsyncProcessFrame;
+import jp.minecraftuser.ecoframework.async.DeadLetter;
+import org.bukkit.command.CommandSender;
+
+/**
+ * デッドレターキュー操作コマンドクラス
+ * @author ecolight
+ */
+public class EcoFrameworkDeadLetterCommand extends CommandFrame {
+    // 一覧表示するフレームあたりの最大件数
+    private static final int LIST_MAX = 10;
+
+    /**
+     * コンストラクタ
+     * @param plg_ プラグインインスタンス
+     * @param name_ コマンド名
+     */
+    public EcoFrameworkDeadLetterCommand(PluginFrame plg_, String name_) {
+        super(plg_, name_);
+        setAuthBlock(true);
+        setAuthConsole(true);
+    }
+
+    /**
+     * コマンド権限文字列設定
+     * @return 権限文字列
+     */
+    @Override
+    public String getPermissionString() {
+        return "ecoframework.deadletter";
+    }
+
+    /**
+     * 処理実行部
+     * @param sender コマンド送信者
+     * @param args パラメタ
+     * @return コマンド処理成否
+     */
+    @Override
+    public boolean worker(CommandSender sender, String[] args) {
+        // パラメータチェック:1～2(操作 [フレーム名])
+        if (!checkRange(sender, args, 1, 2)) return true;
+        String op = args[0].toLowerCase();
+        if (!op.equals("list") && !op.equals("replay") && !op.equals("clear")) {
+            Utl.sendPluginMessage(plg, sender, "操作には list/replay/clear のいずれかを指定してください");
+            return true;
+        }
+
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
+        int found = 0;
+        for (AsyncFrame f : AsyncFrame.getActiveFrames(null)) {
+            if (!(f instanceof AsyncProcessFrame)) continue;
+            // フレーム名指定の場合は フレーム名 または プラグイン名:フレーム名 で一致するもののみ対象とする
+            if ((args.length == 2) && !args[1].equalsIgnoreCase(f.getName())
+                    && !args[1].equalsIgnoreCase(f.getPluginName() + ":" + f.getName())) continue;
+            AsyncProcessFrame a = (AsyncProcessFrame) f;
+            if ((args.length == 1) && (a.getDeadLetterCount() == 0)) continue;
+            found++;
+            String label = f.getPluginName() + ":" + f.getName();
+            if (op.equals("replay")) {
+                Utl.sendPluginMessage(plg, sender, "[{0}] {1}件を再投入しました", label, Integer.toString(a.replayDeadLetters()));
+            } else if (op.equals("clear")) {
+                Utl.sendPluginMessage(plg, sender, "[{0}] {1}件を破棄しました", label, Integer.toString(a.clearDeadLetters()));
+            } else {
+                List<DeadLetter> list = a.getDeadLetters();
+                Utl.sendPluginMessage(plg, sender, "[{0}] 件数:{1} 上限超過による破棄:{2}",
+                        label, Integer.toString(list.size()), Long.toString(a.getDeadLetterDropped()));
+                // 新しいものから表示する
+                for (int i = list.size() - 1; (i >= 0) && (i >= list.size() - LIST_MAX); i--) {
+                    DeadLetter d = list.get(i);
+                    Utl.sendPluginMessage(plg, sender, "  {0} {1} 処理回数:{2} {3}",
+                            sdf.format(new Date(d.getTime())), d.getPayload().getClass().getSimpleName(),
+                            Integer.toString(d.getAttempts()), String.valueOf(d.getCause()));
+                }
+            }
+        }
+        if (found == 0) {
+            Utl.sendPluginMessage(plg, sender, "対象のデッドレターキューはありません");
+        }
+        return true;
+    }
+    
+}
@@ -0,0 +1,135 @@
+package jp.minecraftuser.ecoframework.plugin;
+
+import jp.minecraftuser.ecoframework.CommandFrame;
+import jp.minecraftuser.ecoframework.PluginFrame;
+import jp.minecraftuser.ecoframework.Utl;
+import jp.minecraftuser.ecoframework.async.AsyncFrame;
+import jp.minecraftuser.ecoframework.async.AsyncProcessFrame;
+import jp.minecraftuser.ecoframework.async.AsyncWorkerPool;
+import jp.minecraftuser.ecoframework.async.FrameMetrics;
+import jp.minecraftuser.ecoframework.async.LatencyHistogram;
+import jp.minecraftuser.ecoframework.async.MessageAsyncFrame;
+import jp.minecraftuser.ecoframework.async.PayloadQueue;
+import jp.minecraftuser.ecoframework.async.Priority;
+import org.bukkit.command.CommandSender;
+
+/**
+ * 非同期フレーム統計表示コマンドクラス
+ * @author ecolight
+ */
+public class EcoFrameworkStatsAsyncCommand extends CommandFrame {
+
+    /**
+     * コンストラクタ
+     * @param plg_ プラグインインスタンス
+     * @param name_ コマンド名
+     */
+    public EcoFrameworkStatsAsyncCommand(PluginFrame plg_, String name_) {
+        super(plg_, name_);
+        setAuthBlock(true);
+        setAuthConsole(true);
+    }
+
+    /**
+     * コマンド権限文字列設定
+     * @return 権限文字列
+     */
+    @Override
+    public String getPermissionString() {
+        return "ecoframework.stats.async";
+    }
+
+    /**
+     * 処理実行部
+     * @param sender コマンド送信者
+     * @param args パラメタ
+     * @return コマンド処理成否
+     */
+    @Override
+    public boolean worker(CommandSender sender, String[] args) {
+        // パラメータチェック:0～1(プラグイン名)
+        if (!checkRange(sender, args, 0, 1)) return true;
+
+        Utl.sendPluginMessage(plg, sender, "非同期フレーム統計ここから");
+        AsyncWorkerPool pool = AsyncWorkerPool.getShared();
+        if (pool != null) {
+            Utl.sendPluginMessage(plg, sender, "shared pool threads:{0} frames:{1} ready:{2} slices:{3}",
+                    Integer.toString(pool.getThreadCount()), Integer.toString(pool.getFrameCount()),
+                    Integer.toString(pool.getReadyCount()), Long.toString(pool.getSliceCount()));
+        }
+        for (AsyncFrame f : AsyncFrame.getActiveFrames(null)) {
+            // プラグイン指定の場合、対象以外はスキップ
+            if ((args.length == 1) && (!f.getPluginName().equalsIgnoreCase(args[0]))) continue;
+
+            FrameMetrics m = f.getMetrics();
+            Utl.sendPluginMessage(plg, sender, "[{0}] {1} state:{2} workers:{3}{4}",
+                    f.getPluginName(), f.getName(), f.getState().name(), Integer.toString(f.getWorkerCount()),
+                    f.isVirtual() ? " (virtual)" : (f.isShared() ? " (shared)" : ""));
+            Utl.sendPluginMessage(plg, sender, "  pending:{0} processed:{1} delivered:{2} errors:{3} rate:{4}/s avg:{5}/s",
+                    Long.toString(f.getPendingCount()), Long.toString(m.getProcessed()), Long.toString(m.getDelivered()),
+                    Long.toString(m.getErrors()), num(m.getProcessedRate()), num(m.getAverageRate()));
+            if (f.getRestartCount() > 0) {
+                Utl.sendPluginMessage(plg, sender, "  restarts:{0} halted:{1}", Integer.toString(f.getRestartCount()), Integer.toString(f.getHaltedCount()));
+            }
+            sendHistogram(sender, "wait", m.getWait());
+            sendHistogram(sender, "service", m.getService());
+            sendHistogram(sender, "lag", m.getDeliveryLag());
+
+            // 子スレッド側キューの状況
+            if (f instanceof AsyncProcessFrame) {
+                AsyncProcessFrame a = (AsyncProcessFrame) f;
+                if (a.getDeadLetterCount() > 0) {
+                    Utl.sendPluginMessage(plg, sender, "  deadletter:{0}", Integer.toString(a.getDeadLetterCount()));
+                }
+                for (int i = 0; i < a.getWorkerCount(); i++) {
+                    sendQueue(sender, "worker[" + i + "]", a.getWorkerQueue(i));
+                }
+            } else if (f instanceof MessageAsyncFrame) {
+                sendQueue(sender, "worker", ((MessageAsyncFrame) f).getWorkerQueue());
+            }
+        }
+        Utl.sendPluginMessage(plg, sender, "非同期フレーム統計ここまで");
+        return true;
+    }
+
+    /**
+     * ヒストグラム表示
+     * @param sender コマンド送信者
+     * @param label 表示名
+     * @param h ヒストグラム
+     */
+    private void sendHistogram(CommandSender sender, String label, LatencyHistogram h) {
+        Utl.sendPluginMessage(plg, sender, "  {0}(ms) n:{1} mean:{2} p50:{3} p99:{4} max:{5}",
+                label, Long.toString(h.getCount()), num(h.getMean()),
+                num(h.getPercentile(50)), num(h.getPercentile(99)), num(h.getMax()));
+    }
+
+    /**
+     * キュー状況表示
+     * @param sender コマンド送信者
+     * @param label 表示名
+     * @param q キュー
+     */
+    private void sendQueue(CommandSender sender, String label, PayloadQueue<?> q) {
+        Utl.sendPluginMessage(plg, sender, "  {0} depth:{1} hwm:{2} cap:{3} rejected:{4} dropped:{5}",
+                label, Integer.toString(q.size()), Integer.toString(q.getHighWaterMark()),
+                (q.getCapacity() == 0) ? "-" : Integer.toString(q.getCapacity()),
+                Long.toString(q.getRejectedCount()), Long.toString(q.getDroppedCount()));
+        // 優先度レーンを使用している場合のみレーン別に表示する
+        if ((q.getLaneCount(Priority.HIGH) == 0) && (q.getLaneCount(Priority.BULK) == 0)) return;
+        for (Priority p : Priority.values()) {
+            Utl.sendPluginMessage(plg, sender, "    {0} depth:{1} wait avg:{2} max:{3}",
+                    p.name(), Integer.toString(q.getLaneDepth(p)), num(q.getLaneWaitAverage(p)), num(q.getLaneWaitMax(p)));
+        }
+    }
+
+    /**
+     * 数値の表示用変換
+     * @param v 数値
+     * @return 小数点以下2桁の文字列
+     */
+    private static String num(double v) {
+        return String.format("%.2f", v);
+    }
+    
+}
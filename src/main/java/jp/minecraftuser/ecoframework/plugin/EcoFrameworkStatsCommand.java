@@ -0,0 +1,46 @@
+package jp.minecraftuser.ecoframework.plugin;
+
+import jp.minecraftuser.ecoframework.CommandFrame;
+import jp.minecraftuser.ecoframework.PluginFrame;
+import jp.minecraftuser.ecoframework.Utl;
+import org.bukkit.command.CommandSender;
+
+/**
+ * 統計表示コマンドクラス
+ * @author ecolight
+ */
+public class EcoFrameworkStatsCommand extends CommandFrame {
+
+    /**
+     * コンストラクタ
+     * @param plg_ プラグインインスタンス
+     * @param name_ コマンド名
+     */
+    public EcoFrameworkStatsCommand(PluginFrame plg_, String name_) {
+        super(plg_, name_);
+        setAuthBlock(true);
+        setAuthConsole(true);
+    }
+
+    /**
+     * コマンド権限文字列設定
+     * @return 権限文字列
+     */
+    @Override
+    public String getPermissionString() {
+        return "ecoframework.stats";
+    }
+
+    /**
+     * 処理実行部
+     * @param sender コマンド送信者
+     * @param args パラメタ
+     * @return コマンド処理成否
+     */
+    @Override
+    public boolean worker(CommandSender sender, String[] args) {
+        Utl.sendPluginMessage(plg, sender, "表示する統計を指定してください [async|db]");
+        return true;
+    }
+    
+}
@@ -0,0 +1,76 @@
+package jp.minecraftuser.ecoframework.plugin;
+
+import java.util.Map;
+import jp.minecraftuser.ecoframework.CommandFrame;
+import jp.minecraftuser.ecoframework.DatabaseFrame;
+import jp.minecraftuser.ecoframework.PluginFrame;
+import jp.minecraftuser.ecoframework.Utl;
+import jp.minecraftuser.ecoframework.db.PoolStats;
+import jp.minecraftuser.ecoframework.db.StatementCache;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * データベース統計表示コマンドクラス
+ * @author ecolight
+ */
+public class EcoFrameworkStatsDbCommand extends CommandFrame {
+
+    /**
+     * コンストラクタ
+     * @param plg_ プラグインインスタンス
+     * @param name_ コマンド名
+     */
+    public EcoFrameworkStatsDbCommand(PluginFrame plg_, String name_) {
+        super(plg_, name_);
+        setAuthBlock(true);
+        setAuthConsole(true);
+    }
+
+    /**
+     * コマンド権限文字列設定
+     * @return 権限文字列
+     */
+    @Override
+    public String getPermissionString() {
+        return "ecoframework.stats.db";
+    }
+
+    /**
+     * 処理実行部
+     * @param sender コマンド送信者
+     * @param args パラメタ
+     * @return コマンド処理成否
+     */
+    @Override
+    public boolean worker(CommandSender sender, String[] args) {
+        // パラメータチェック:0～1(プラグイン名)
+        if (!checkRange(sender, args, 0, 1)) return true;
+
+        Utl.sendPluginMessage(plg, sender, "データベース統計ここから");
+        for (Plugin p : Bukkit.getPluginManager().getPlugins()) {
+            if (!(p instanceof PluginFrame)) continue;
+            // プラグイン指定の場合、対象以外はスキップ
+            if ((args.length == 1) && (!p.getName().equalsIgnoreCase(args[0]))) continue;
+
+            for (Map.Entry<String, DatabaseFrame> e : ((PluginFrame) p).getDatabaseList().entrySet()) {
+                DatabaseFrame db = e.getValue();
+                Utl.sendPluginMessage(plg, sender, "[{0}] {1}", p.getName(), e.getKey());
+                for (PoolStats s : db.getPoolStats()) {
+                    Utl.sendPluginMessage(plg, sender, "  {0} active:{1} idle:{2} total:{3}/{4} waiting:{5}",
+                            s.getProfile().name(), Integer.toString(s.getActive()), Integer.toString(s.getIdle()),
+                            Integer.toString(s.getTotal()), Integer.toString(s.getMax()), Integer.toString(s.getWaiting()));
+                }
+                StatementCache c = db.getStatementCache();
+                if (c != null) {
+                    Utl.sendPluginMessage(plg, sender, "  statement cache hit:{0} miss:{1} scopes:{2}",
+                            Long.toString(c.getHitCount()), Long.toString(c.getMissCount()), Integer.toString(c.getScopeCount()));
+                }
+            }
+        }
+        Utl.sendPluginMessage(plg, sender, "データベース統計ここまで");
+        return true;
+    }
+
+}
@@ -7,6 +7,7 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jp.minecraftuser.ecoframework.async.*;
@@ -63,44 +64,25 @@ public class PlayerDataFileStoreAsyncThread extends AsyncProcessFrame {
             new File(w + "/stats/" + uid + ".json"),
             new File(w + "/advancements/" + uid + ".json"));
         
-        // ファイルの更新確認完了
-        log.log(Level.INFO, "{0}/{1}", new Object[]{files.profile.getAbsolutePath(), files.profile.toString()});
-        log.log(Level.INFO, "{0}/{1}", new Object[]{files.stats.getAbsolutePath(), files.stats.toString()});
-        log.log(Level.INFO, "{0}/{1}", new Object[]{files.adv.getAbsolutePath(), files.adv.toString()});
+        // ファイルの更新確認
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss");
-        log.info("開始値:" + data.datetime + " profile チェック値:" + files.profile.lastModified());
-        log.info("開始値:" + data.datetime + " stats チェック値:" + files.stats.lastModified());
-        log.info("開始値:" + data.datetime + " advancements チェック値:" + files.adv.lastModified());
-        log.info("開始時刻:"+sdf.format(data.datetime));
-        log.info("チェック時刻:" + sdf.format(files.profile.lastModified()));
-        log.info("チェック時刻:" + sdf.format(files.stats.lastModified()));
-        log.info("チェック時刻:" + sdf.format(files.adv.lastModified()));
-        while (true) {
-            long mod1 = files.profile.lastModified();
-            long mod2 = files.stats.lastModified();
-            long mod3 = files.adv.lastModified();
-            if ((mod1 > data.datetime) &&
-                (mod2 > data.datetime) &&
-                (mod3 > data.datetime)) break;
-            Date now = new Date();
-            // 現時刻と保存日時が+-1秒以内なら完了済みとみなす
-            if ((Math.abs(now.getTime() - mod1) < 1000) &&
-                (Math.abs(now.getTime() - mod2) < 1000) &&
-                (Math.abs(now.getTime() - mod3) < 1000)) break;
-            // 保存開始から50秒経過でタイムアウト
-            if (now.getTime() - data.datetime > 50000) {
-                sendPluginMessage(plg, null, "ユーザーデータの保存に失敗しました。本メッセージをサーバー管理者に通知してください。Player={0}, Time:{1}",
-                        data.uuid.toString(), sdf.format(now));
-                break;
-            }
-            log.info("チェック：profile ファイル更新時刻:" + sdf.format(mod1));
-            log.info("チェック：stats ファイル更新時刻:" + sdf.format(mod2));
-            log.info("チェック：advancements ファイル更新時刻:" + sdf.format(mod3));
-            try {
-                Thread.sleep(500);
-            } catch (InterruptedException ex) {
-                Logger.getLogger(PlayerDataFileStoreAsyncThread.class.getName()).log(Level.SEVERE, null, ex);
-            }
+        if (data.checks == 0) {
+            log.log(Level.INFO, "{0}/{1}", new Object[]{files.profile.getAbsolutePath(), files.profile.toString()});
+            log.log(Level.INFO, "{0}/{1}", new Object[]{files.stats.getAbsolutePath(), files.stats.toString()});
+            log.log(Level.INFO, "{0}/{1}", new Object[]{files.adv.getAbsolutePath(), files.adv.toString()});
+            log.info("開始値:" + data.datetime + " profile チェック値:" + files.profile.lastModified());
+            log.info("開始値:" + data.datetime + " stats チェック値:" + files.stats.lastModified());
+            log.info("開始値:" + data.datetime + " advancements チェック値:" + files.adv.lastModified());
+            log.info("開始時刻:"+sdf.format(data.datetime));
+            log.info("チェック時刻:" + sdf.format(files.profile.lastModified()));
+            log.info("チェック時刻:" + sdf.format(files.stats.lastModified()));
+            log.info("チェック時刻:" + sdf.format(files.adv.lastModified()));
+        }
+        data.checks++;
+        if (!isSaved(data, files, sdf)) {
+            // 未保存の場合は子スレッドを占有しないよう500ミリ秒後に再確認する(その間は他のDataを処理する)
+            requeue(data, 500, TimeUnit.MILLISECONDS);
+            return;
         }
         
         // データベースへの格納
@@ -132,14 +114,44 @@ public class PlayerDataFileStoreAsyncThread extends AsyncProcessFrame {
         receiveData(data);
     }
 
+    /**
+     * プレイヤーデータファイルの保存完了判定
+     * @param data ペイロードインスタンス
+     * @param files プレイヤーデータファイル
+     * @param sdf ログ出力用日時フォーマット
+     * @return 保存完了、またはタイムアウトした場合true
+     */
+    private boolean isSaved(PlayerDataFileStorePayload data, PlayerFileSet files, SimpleDateFormat sdf) {
+        long mod1 = files.profile.lastModified();
+        long mod2 = files.stats.lastModified();
+        long mod3 = files.adv.lastModified();
+        if ((mod1 > data.datetime) &&
+            (mod2 > data.datetime) &&
+            (mod3 > data.datetime)) return true;
+        Date now = new Date();
+        // 現時刻と保存日時が+-1秒以内なら完了済みとみなす
+        if ((Math.abs(now.getTime() - mod1) < 1000) &&
+            (Math.abs(now.getTime() - mod2) < 1000) &&
+            (Math.abs(now.getTime() - mod3) < 1000)) return true;
+        // 保存開始から50秒経過でタイムアウト
+        if (now.getTime() - data.datetime > 50000) {
+            sendPluginMessage(plg, null, "ユーザーデータの保存に失敗しました。本メッセージをサーバー管理者に通知してください。Player={0}, Time:{1}",
+                    data.uuid.toString(), sdf.format(now));
+            return true;
+        }
+        log.info("チェック：profile ファイル更新時刻:" + sdf.format(mod1));
+        log.info("チェック：stats ファイル更新時刻:" + sdf.format(mod2));
+        log.info("チェック：advancements ファイル更新時刻:" + sdf.format(mod3));
+        return false;
+    }
+
     /**
      * Data加工後親スレッド側処理
+     * 処理結果はsubmitの応答としてリスナー側で受け取るため何もしない
      * @param data_ ペイロードインスタンス
      */
     @Override
     protected void executeReceive(PayloadFrame data_) {
-        // 処理結果を受け取ったので完了する
-        listener.complete(((PlayerDataFileStorePayload)data_).uuid);
     }
 
     /**
@@ -7,10 +7,12 @@ import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import jp.minecraftuser.ecoframework.ListenerFrame;
 import jp.minecraftuser.ecoframework.PluginFrame;
+import jp.minecraftuser.ecoframework.db.ConnectionProfile;
 import jp.minecraftuser.ecoframework.plugin.EcoFrameworkConfig;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -63,7 +65,7 @@ public class PlayerDataFileStoreListener extends ListenerFrame {
             return;
         }
         
-        // 生成と起動 (5tickに1回結果確認する)
+        // 生成と起動 (5tickに1回結果確認する 結果はsubmitの応答で受け取る)
         PlayerDataFileStoreAsyncThread t = new PlayerDataFileStoreAsyncThread(plg, this, uid.toString());
         t.runTaskTimer(plg, 0, 5);
         workTable.put(uid, t);
@@ -79,8 +81,13 @@ public class PlayerDataFileStoreListener extends ListenerFrame {
         // 個人のセーブだと統計の保存が動作しないため全プレイヤーセーブを呼び出すspigotめ…
         //Bukkit.savePlayers();
 
-        // データの作成と依頼
-        t.sendData(data);
+        // データの作成と依頼 (成否、タイムアウトに関わらず完了時にログイン抑止を解除する)
+        t.submit(data, 60, TimeUnit.SECONDS).whenComplete((r, ex) -> {
+            if (ex != null) {
+                log.log(Level.WARNING, "PlayerData store not completed:{0} {1}", new Object[]{uid, ex.toString()});
+            }
+            complete(uid);
+        });
         log.info("End player quit : " + event.getPlayer().getDisplayName() + " : " + event.getPlayer().getPlayer().getUniqueId().toString());
     }
 
@@ -208,9 +215,10 @@ public class PlayerDataFileStoreListener extends ListenerFrame {
     protected void complete(UUID uid) {
         // DB保存が完了したのでスレッドの停止と監視タイマの停止
         // 作業テーブルからの削除
-        PlayerDataFileStoreAsyncThread t = workTable.get(uid);
-        t.cancel();
-        workTable.remove(uid);
+        PlayerDataFileStoreAsyncThread t = workTable.remove(uid);
+        if (t != null) {
+            t.cancel();
+        }
     }
     private enum OPE {
         LOAD, START, ISLOGOUT
@@ -231,7 +239,8 @@ public class PlayerDataFileStoreListener extends ListenerFrame {
         PlayerFileStore store = efconf.store;
         Connection con = null;
         try {
-            con = store.connect();
+            // 参照のみの処理は読み取り用コネクションで行い、ログアウト時の保存処理を待たない
+            con = (ope == OPE.START) ? store.connect() : store.connect(ConnectionProfile.READ_ONLY_FAST);
             if (store.existPlayerData(con, uuid)) {
                 switch (ope) {
                     case LOAD:
@@ -247,11 +256,11 @@ public class PlayerDataFileStoreListener extends ListenerFrame {
             } else {
                 log.log(Level.INFO, "not stored PlayerData:{0}", uuid);
             }
-            con.commit();
+            if (!con.getAutoCommit()) con.commit();
         } catch (SQLException | IOException ex) {
             if (con != null) {
                 try {
-                    con.rollback();
+                    if (!con.getAutoCommit()) con.rollback();
                 } catch (SQLException ex1) {
                     Logger.getLogger(PlayerDataFileStoreListener.class.getName()).log(Level.SEVERE, null, ex1);
                 }
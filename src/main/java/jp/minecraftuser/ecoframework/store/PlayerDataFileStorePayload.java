@@ -15,6 +15,8 @@ public class PlayerDataFileStorePayload extends PayloadFrame {
     public String world;
     public long datetime;
     public boolean result = false;
+    // ファイル保存完了の確認回数(子スレッドのみR/W)
+    public int checks = 0;
 
     /**
      * コンストラクタ
@@ -28,4 +30,14 @@ public class PlayerDataFileStorePayload extends PayloadFrame {
         // (getWorldsの0番目がserver.propertiesのlevel-nameのワールド)
         world = plg_.getServer().getWorlds().get(0).getName();
     }
+
+    /**
+     * 振り分けキー取得
+     * 同一プレイヤーの保存処理は同一の子スレッドで順に処理する
+     * @return プレイヤーUUID
+     */
+    @Override
+    public Object getPartitionKey() {
+        return uuid;
+    }
 }
@@ -48,14 +48,14 @@ public class PlayerFileStore extends DatabaseFrame {
             if ((justCreated) || (!constans("datatable"))) {
                 // 新規作成の場合、初版のテーブルのみ作成して終わり
                 MessageFormat mf = new MessageFormat("CREATE TABLE IF NOT EXISTS datatable(most {0} NOT NULL, least {1} NOT NULL, logout {2} NOT NULL, name {3} NOT NULL, size {4} NOT NULL, data {5} NOT NULL, PRIMARY KEY(most, least))");
-                executeStatement(mf.format(new String[]{CTYPE.LONG.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.STRING.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.BLOB.get(jdbc)}));
+                executeStatement(con, mf.format(new String[]{CTYPE.LONG.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.STRING.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.BLOB.get(jdbc)}));
                 log.log(Level.INFO, "{0}DataBase checked.", name);
-                updateSettingsVersion();
+                updateSettingsVersion(con);
                 log.log(Level.INFO, "create {0} version {1}", new Object[]{name, dbversion});
             } else {
                 // 既存DB引き継ぎの場合はdbversionだけ上げてv2->3の処理へ
                 log.log(Level.INFO, "convert {0} version 1 -> 2 start", name);
-                updateSettingsVersion();
+                updateSettingsVersion(con);
                 log.log(Level.INFO, "convert {0} version 1 -> 2 complete", name);
             }
         }
@@ -64,17 +64,17 @@ public class PlayerFileStore extends DatabaseFrame {
             log.log(Level.INFO, "convert {0} version {1} -> {2} start", new Object[]{name, dbversion, dbversion + 1});
             // ユーザー状態テーブル追加
             MessageFormat mf = new MessageFormat("CREATE TABLE IF NOT EXISTS playerstats(most {0} NOT NULL, least {1} NOT NULL, logout {2} NOT NULL, PRIMARY KEY(most, least))");
-            executeStatement(mf.format(new String[]{CTYPE.LONG.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.LONG.get(jdbc)}));
+            executeStatement(con, mf.format(new String[]{CTYPE.LONG.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.LONG.get(jdbc)}));
             // ユーザー統計データデーブル追加
             mf = new MessageFormat("CREATE TABLE IF NOT EXISTS statstable(most {0} NOT NULL, least {1} NOT NULL, name {2} NOT NULL, size {3} NOT NULL, data {4} NOT NULL, PRIMARY KEY(most, least))");
-            executeStatement(mf.format(new String[]{CTYPE.LONG.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.STRING.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.BLOB.get(jdbc)}));
+            executeStatement(con, mf.format(new String[]{CTYPE.LONG.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.STRING.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.BLOB.get(jdbc)}));
             // ユーザー実績データテーブル追加
             mf = new MessageFormat("CREATE TABLE IF NOT EXISTS advtable(most {0} NOT NULL, least {1} NOT NULL, name {2} NOT NULL, size {3} NOT NULL, data {4} NOT NULL, PRIMARY KEY(most, least))");
-            executeStatement(mf.format(new String[]{CTYPE.LONG.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.STRING.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.BLOB.get(jdbc)}));
+            executeStatement(con, mf.format(new String[]{CTYPE.LONG.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.STRING.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.BLOB.get(jdbc)}));
             // 既存テーブルからlogoutを分離(playerstatsへ)、
-            renameTable("datatable", "datatable_");
+            renameTable(con, "datatable", "datatable_");
             mf = new MessageFormat("CREATE TABLE IF NOT EXISTS datatable(most {0} NOT NULL, least {1} NOT NULL, name {2} NOT NULL, size {3} NOT NULL, data {4} NOT NULL, PRIMARY KEY(most, least))");
-            executeStatement(mf.format(new String[]{CTYPE.LONG.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.STRING.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.BLOB.get(jdbc)}));
+            executeStatement(con, mf.format(new String[]{CTYPE.LONG.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.STRING.get(jdbc), CTYPE.LONG.get(jdbc), CTYPE.BLOB.get(jdbc)}));
 
             PreparedStatement prep = con.prepareStatement("SELECT * FROM datatable_");
             PreparedStatement prep2 = con.prepareStatement("REPLACE INTO datatable VALUES (?, ?, ?, ?, ?)");
@@ -113,9 +113,9 @@ public class PlayerFileStore extends DatabaseFrame {
                 // ロールバックは上位のスーパークラスでやる
             }
             prep.close();
-            dropTable("datatable_");
+            dropTable(con, "datatable_");
 
-            updateSettingsVersion();
+            updateSettingsVersion(con);
             log.log(Level.INFO, "convert {0} version {1} -> {2} complete", new Object[]{name, dbversion - 1, dbversion});
         }
     }